@@ -0,0 +1,27 @@
+package fr.fullstack.shopapp.benchmark;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks selected by {@code -Djmh.include} and writes the results as JSON to
+ * {@code -Djmh.result}, so that two runs can be compared. Any standard JMH option can be passed as
+ * argument.
+ */
+public class BenchmarkRunner {
+
+    public static void main(String[] args) throws Exception {
+        String sqlDir = System.getProperty(ShopFixtures.SQL_DIR_PROPERTY, "../sql");
+        Options options = new OptionsBuilder()
+                .parent(new CommandLineOptions(args))
+                .include(System.getProperty("jmh.include", ".*"))
+                .resultFormat(ResultFormatType.JSON)
+                .result(System.getProperty("jmh.result", "target/jmh-result.json"))
+                .jvmArgsAppend("-D" + ShopFixtures.SQL_DIR_PROPERTY + "=" + sqlDir)
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,372 @@
+package fr.fullstack.shopapp.benchmark;
+
+import org.postgresql.PGConnection;
+import org.postgresql.copy.PGCopyOutputStream;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * Fills a PostgreSQL database created with sql/create_tables.sql with a dataset of production
+ * scale, for the load driver.
+ * <p>
+ * Every shop and every product is drawn from its own random generator, seeded by
+ * {@code --seed} and its id: the same arguments always produce the same rows, and each table is
+ * streamed with COPY in its own pass without holding the dataset in memory. The distributions:
+ * <ul>
+ *     <li>products per shop: log-normal, many small shops and a long tail of large ones</li>
+ *     <li>categories: 1 to 5 per shop, the first categories being the most frequent; 1 to 3 per
+ *     product among the ones of its shop</li>
+ *     <li>locales: a french name on every product, an english one on 60% of them</li>
+ *     <li>opening hours: office hours, split hours, always open, evenings running past midnight,
+ *     weekends only, or none</li>
+ * </ul>
+ * Usage: {@code --shops=200000 --products=2000000 --categories=30 --seed=42
+ * --url=jdbc:postgresql://localhost:5432/postgres --user=postgres --password=1234 --truncate=true}
+ */
+public class DatasetGenerator {
+
+    private static final long PRODUCT_SALT = 0x2545F4914F6CDD1DL;
+
+    private static final long SHOP_SALT = 0x9E3779B97F4A7C15L;
+
+    private static final int OPENING_HOURS_PER_SHOP = 16;
+
+    private static final LocalDate FIRST_CREATION_DATE = LocalDate.of(2014, 1, 1);
+
+    private final int nbCategories;
+    private final int nbShops;
+    private final long seed;
+
+    // Products of shop i: ids firstProductIds[i - 1] to firstProductIds[i] - 1
+    private final long[] firstProductIds;
+
+    public DatasetGenerator(int nbShops, long nbProducts, int nbCategories, long seed) {
+        this.nbShops = nbShops;
+        this.nbCategories = nbCategories;
+        this.seed = seed;
+        this.firstProductIds = productRanges(nbProducts);
+    }
+
+    public static void main(String[] args) throws Exception {
+        CommandLineArguments arguments = new CommandLineArguments(args);
+        DatasetGenerator generator = new DatasetGenerator(
+                arguments.getInt("shops", 200_000),
+                arguments.getLong("products", 2_000_000),
+                arguments.getInt("categories", Vocabulary.CATEGORIES.size()),
+                arguments.getLong("seed", 42)
+        );
+        try (Connection connection = DriverManager.getConnection(
+                arguments.getString("url", "jdbc:postgresql://localhost:5432/postgres"),
+                arguments.getString("user", "postgres"),
+                arguments.getString("password", "1234"))) {
+            generator.load(connection, arguments.getBoolean("truncate", false));
+        }
+    }
+
+    public void load(Connection connection, boolean truncate) throws SQLException, IOException {
+        prepare(connection, truncate);
+        long start = System.nanoTime();
+
+        copy(connection, "categories (id, name)", out -> {
+            for (int id = 1; id <= nbCategories; id++) {
+                String name = Vocabulary.CATEGORIES.get((id - 1) % Vocabulary.CATEGORIES.size());
+                row(out, id, text(id > Vocabulary.CATEGORIES.size() ? name + " " + id : name));
+            }
+        });
+        copy(connection, "shops (id, name, created_at, in_vacations, nb_products, nb_categories)", out -> {
+            for (int id = 1; id <= nbShops; id++) {
+                ShopPlan shop = shop(id);
+                row(out, id, text(shop.name()), shop.createdAt(), shop.inVacations(), shop.nbProducts(), countCategories(shop));
+            }
+        });
+        copy(connection, "opening_hours (id, day, open_at, close_at)", out -> {
+            for (int id = 1; id <= nbShops; id++) {
+                List<OpeningHours> openingHours = shop(id).openingHours();
+                for (int i = 0; i < openingHours.size(); i++) {
+                    OpeningHours hours = openingHours.get(i);
+                    row(out, openingHoursId(id, i), hours.day(), hours.openAt(), hours.closeAt());
+                }
+            }
+        });
+        copy(connection, "shops_opening_hours (shop_id, opening_hours_id)", out -> {
+            for (int id = 1; id <= nbShops; id++) {
+                for (int i = 0; i < shop(id).openingHours().size(); i++) {
+                    row(out, id, openingHoursId(id, i));
+                }
+            }
+        });
+        copy(connection, "products (id, price, shop_id)", out -> forEachProduct(product ->
+                row(out, product.id(), product.price(), product.shopId())));
+        copy(connection, "products_categories (product_id, category_id)", out -> forEachProduct(product -> {
+            for (int categoryId : product.categoryIds()) {
+                row(out, product.id(), categoryId);
+            }
+        }));
+        copy(connection, "localized_product (id, locale, name, description)", out -> forEachProduct(product -> {
+            row(out, product.id() * 2, "FR", text(product.nameFr()), text(product.descriptionFr()));
+            if (product.nameEn() != null) {
+                row(out, product.id() * 2 + 1, "EN", text(product.nameEn()), text(product.descriptionEn()));
+            }
+        }));
+        copy(connection, "products_localized_product (product_id, localized_product_id)", out -> forEachProduct(product -> {
+            row(out, product.id(), product.id() * 2);
+            if (product.nameEn() != null) {
+                row(out, product.id(), product.id() * 2 + 1);
+            }
+        }));
+
+        finish(connection);
+        System.out.printf("%d shops, %d products and %d categories generated in %d s%n",
+                nbShops, firstProductIds[nbShops] - 1, nbCategories, (System.nanoTime() - start) / 1_000_000_000);
+    }
+
+    // SHOPS
+
+    private ShopPlan shop(int id) {
+        SplittableRandom random = new SplittableRandom(seed ^ (id * SHOP_SALT));
+        String name = Vocabulary.pick(Vocabulary.SHOP_KINDS, random) + " " + Vocabulary.pick(Vocabulary.SHOP_PLACES, random)
+                + " " + id;
+        LocalDate createdAt = FIRST_CREATION_DATE.plusDays(random.nextInt(3650));
+        boolean inVacations = random.nextInt(10) == 0;
+        // 1 to 5 draws, most shops sell one or two categories
+        int[] categoryIds = new int[1 + Math.min(4, (int) (-Math.log(1 - random.nextDouble()) * 1.2))];
+        for (int i = 0; i < categoryIds.length; i++) {
+            categoryIds[i] = popularCategory(random);
+        }
+        categoryIds = Arrays.stream(categoryIds).distinct().toArray();
+        return new ShopPlan(id, name, createdAt, inVacations, categoryIds, openingHours(random),
+                firstProductIds[id - 1], (int) (firstProductIds[id] - firstProductIds[id - 1]));
+    }
+
+    // The first categories are the most frequent
+    private int popularCategory(SplittableRandom random) {
+        double u = random.nextDouble();
+        return 1 + (int) (nbCategories * u * u);
+    }
+
+    private int countCategories(ShopPlan shop) {
+        boolean[] sold = new boolean[nbCategories + 1];
+        int count = 0;
+        for (long id = shop.firstProductId(); id < shop.firstProductId() + shop.nbProducts(); id++) {
+            for (int categoryId : product(id, shop).categoryIds()) {
+                if (!sold[categoryId]) {
+                    sold[categoryId] = true;
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    private static List<OpeningHours> openingHours(SplittableRandom random) {
+        int shape = random.nextInt(100);
+        // Opens on the hour, at a quarter past or at half past
+        int jitter = 15 * random.nextInt(3);
+        List<OpeningHours> openingHours = new ArrayList<>();
+        if (shape < 40) {
+            for (int day = 1; day <= 5; day++) {
+                openingHours.add(new OpeningHours(day, time(9, jitter), time(18, 0)));
+            }
+        } else if (shape < 60) {
+            for (int day = 2; day <= 6; day++) {
+                openingHours.add(new OpeningHours(day, time(9, jitter), time(12, 30)));
+                openingHours.add(new OpeningHours(day, time(14, 0), time(19, 0)));
+            }
+        } else if (shape < 70) {
+            for (int day = 1; day <= 7; day++) {
+                openingHours.add(new OpeningHours(day, time(0, 0), time(23, 59)));
+            }
+        } else if (shape < 80) {
+            // Closes after midnight
+            for (int day = 3; day <= 7; day++) {
+                openingHours.add(new OpeningHours(day, time(18, jitter), time(2, 0)));
+            }
+        } else if (shape < 90) {
+            for (int day = 6; day <= 7; day++) {
+                openingHours.add(new OpeningHours(day, time(10, jitter), time(18, 0)));
+            }
+        }
+        return openingHours;
+    }
+
+    private static long openingHoursId(int shopId, int index) {
+        return (long) shopId * OPENING_HOURS_PER_SHOP + index;
+    }
+
+    private static LocalTime time(int hour, int minute) {
+        return LocalTime.of(hour, minute);
+    }
+
+    // PRODUCTS
+
+    private void forEachProduct(ProductWriter writer) throws IOException {
+        for (int shopId = 1; shopId <= nbShops; shopId++) {
+            ShopPlan shop = shop(shopId);
+            for (long id = shop.firstProductId(); id < shop.firstProductId() + shop.nbProducts(); id++) {
+                writer.write(product(id, shop));
+            }
+        }
+    }
+
+    private ProductPlan product(long id, ShopPlan shop) {
+        SplittableRandom random = new SplittableRandom(seed ^ (id * PRODUCT_SALT));
+        float price = Math.max(50, Math.round(Math.exp(3 + random.nextGaussian()) * 100)) / 100f;
+        int[] categoryIds = new int[1 + random.nextInt(3)];
+        for (int i = 0; i < categoryIds.length; i++) {
+            categoryIds[i] = shop.categoryIds()[random.nextInt(shop.categoryIds().length)];
+        }
+        categoryIds = Arrays.stream(categoryIds).distinct().toArray();
+        int noun = random.nextInt(Vocabulary.PRODUCT_NOUNS_FR.size());
+        int adjective = random.nextInt(Vocabulary.PRODUCT_ADJECTIVES_FR.size());
+        String nounFr = Vocabulary.PRODUCT_NOUNS_FR.get(noun);
+        String adjectiveFr = Vocabulary.PRODUCT_ADJECTIVES_FR.get(adjective);
+        String nameFr = capitalize(nounFr) + " " + adjectiveFr;
+        String descriptionFr = random.nextInt(10) < 7 ? "Notre " + nounFr + " " + adjectiveFr + ", choisi avec soin." : null;
+        String nameEn = null;
+        String descriptionEn = null;
+        if (random.nextInt(10) < 6) {
+            String nounEn = Vocabulary.PRODUCT_NOUNS_EN.get(noun);
+            String adjectiveEn = Vocabulary.PRODUCT_ADJECTIVES_EN.get(adjective);
+            nameEn = capitalize(adjectiveEn) + " " + nounEn;
+            descriptionEn = descriptionFr == null ? null : "Our " + adjectiveEn + " " + nounEn + ", carefully selected.";
+        }
+        return new ProductPlan(id, shop.id(), price, categoryIds, nameFr, descriptionFr, nameEn, descriptionEn);
+    }
+
+    private long[] productRanges(long nbProducts) {
+        double[] weights = new double[nbShops];
+        double total = 0;
+        for (int i = 0; i < nbShops; i++) {
+            weights[i] = Math.exp(1.5 * new SplittableRandom(seed ^ ((i + 1) * SHOP_SALT) ^ PRODUCT_SALT).nextGaussian());
+            total += weights[i];
+        }
+        long[] firstIds = new long[nbShops + 1];
+        firstIds[0] = 1;
+        long assigned = 0;
+        for (int i = 0; i < nbShops; i++) {
+            long count = (long) (nbProducts * weights[i] / total);
+            firstIds[i + 1] = firstIds[i] + count;
+            assigned += count;
+        }
+        // Rounding leftovers go to the first shops
+        long remaining = nbProducts - assigned;
+        for (int i = 1; i <= nbShops; i++) {
+            firstIds[i] += Math.min(i, remaining);
+        }
+        return firstIds;
+    }
+
+    private static String capitalize(String word) {
+        return Character.toUpperCase(word.charAt(0)) + word.substring(1);
+    }
+
+    // COPY
+
+    private void prepare(Connection connection, boolean truncate) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            try (ResultSet rs = statement.executeQuery("SELECT EXISTS (SELECT 1 FROM shops)")) {
+                rs.next();
+                if (rs.getBoolean(1) && !truncate) {
+                    throw new IllegalStateException("The database already has shops, run with --truncate=true to replace them");
+                }
+            }
+            // The categories are also truncated: the generated categories are the first ids
+            statement.execute("TRUNCATE shop_index_outbox, products_localized_product, localized_product, "
+                    + "products_categories, products, shops_opening_hours, opening_hours, shops, categories");
+            // Created by the application: its next start indexes the generated shops again
+            try (ResultSet rs = statement.executeQuery("SELECT to_regclass('sync_status') IS NOT NULL")) {
+                rs.next();
+                if (rs.getBoolean(1)) {
+                    statement.execute("TRUNCATE sync_status");
+                }
+            }
+        }
+    }
+
+    private void finish(Connection connection) throws SQLException {
+        long maxId = Math.max(openingHoursId(nbShops, OPENING_HOURS_PER_SHOP - 1), (firstProductIds[nbShops] - 1) * 2 + 1);
+        try (Statement statement = connection.createStatement()) {
+            // Ids allocated by the application start after the generated ones, whatever the sequence
+            List<String> sequences = new ArrayList<>();
+            try (ResultSet rs = statement.executeQuery(
+                    "SELECT sequencename FROM pg_sequences WHERE schemaname = current_schema()")) {
+                while (rs.next()) {
+                    sequences.add(rs.getString(1));
+                }
+            }
+            for (String sequence : sequences) {
+                statement.execute("SELECT setval('" + sequence + "', " + (maxId + 1000) + ")");
+            }
+            statement.execute("ANALYZE");
+        }
+    }
+
+    private static void copy(Connection connection, String table, TableWriter writer) throws SQLException, IOException {
+        long start = System.nanoTime();
+        PGConnection pgConnection = connection.unwrap(PGConnection.class);
+        try (Writer out = new BufferedWriter(new OutputStreamWriter(
+                new PGCopyOutputStream(pgConnection, "COPY " + table + " FROM STDIN WITH (FORMAT csv)", 1 << 16),
+                StandardCharsets.UTF_8), 1 << 16)) {
+            writer.write(out);
+        }
+        System.out.printf("%s copied in %d ms%n", table.substring(0, table.indexOf(' ')), (System.nanoTime() - start) / 1_000_000);
+    }
+
+    private static void row(Writer out, Object... values) throws IOException {
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) {
+                out.write(',');
+            }
+            // Empty unquoted values are NULL
+            if (values[i] != null) {
+                out.write(values[i].toString());
+            }
+        }
+        out.write('\n');
+    }
+
+    // Quoted CSV field, or NULL
+    private static String text(String value) {
+        return value == null ? null : '"' + value.replace("\"", "\"\"") + '"';
+    }
+
+    @FunctionalInterface
+    private interface ProductWriter {
+        void write(ProductPlan product) throws IOException;
+    }
+
+    @FunctionalInterface
+    private interface TableWriter {
+        void write(Writer out) throws IOException;
+    }
+
+    private record OpeningHours(int day, LocalTime openAt, LocalTime closeAt) {
+    }
+
+    private record ProductPlan(
+            long id, long shopId, float price, int[] categoryIds,
+            String nameFr, String descriptionFr, String nameEn, String descriptionEn
+    ) {
+    }
+
+    private record ShopPlan(
+            long id, String name, LocalDate createdAt, boolean inVacations, int[] categoryIds,
+            List<OpeningHours> openingHours, long firstProductId, int nbProducts
+    ) {
+    }
+}
@@ -0,0 +1,75 @@
+package fr.fullstack.shopapp.benchmark;
+
+import fr.fullstack.shopapp.config.ElasticConfig;
+import fr.fullstack.shopapp.config.LongToLocalTimeConverter;
+import fr.fullstack.shopapp.document.ShopDocument;
+import fr.fullstack.shopapp.model.Shop;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.data.elasticsearch.core.convert.ElasticsearchCustomConversions;
+import org.springframework.data.elasticsearch.core.convert.MappingElasticsearchConverter;
+import org.springframework.data.elasticsearch.core.document.Document;
+import org.springframework.data.elasticsearch.core.mapping.SimpleElasticsearchMappingContext;
+
+import java.time.LocalTime;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Conversion of a shop and its products into the idx_shops_search document, as done for every
+ * indexed shop, and of a stored opening time back into LocalTime.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ElasticsearchConversionBenchmark {
+
+    private MappingElasticsearchConverter converter;
+
+    private LongToLocalTimeConverter longToLocalTimeConverter;
+
+    private ShopDocument shop;
+
+    @Setup
+    public void setUp() {
+        ElasticsearchCustomConversions conversions = new ElasticConfig().elasticsearchCustomConversions();
+        SimpleElasticsearchMappingContext mappingContext = new SimpleElasticsearchMappingContext();
+        mappingContext.setInitialEntitySet(Set.of(ShopDocument.class));
+        mappingContext.setSimpleTypeHolder(conversions.getSimpleTypeHolder());
+        mappingContext.afterPropertiesSet();
+
+        converter = new MappingElasticsearchConverter(mappingContext);
+        converter.setConversions(conversions);
+        converter.afterPropertiesSet();
+
+        longToLocalTimeConverter = new LongToLocalTimeConverter();
+        Shop entity = ShopFixtures.shop(1, 2);
+        shop = ShopDocument.from(entity, List.of(
+                ShopFixtures.product(1, entity, 2), ShopFixtures.product(2, entity, 2), ShopFixtures.product(3, entity, 2)
+        ), Integer.MAX_VALUE);
+    }
+
+    @Benchmark
+    public LocalTime readOpeningTime() {
+        return longToLocalTimeConverter.convert(32_400_000L);
+    }
+
+    @Benchmark
+    public Document writeShop() {
+        Document document = Document.create();
+        converter.write(shop, document);
+        return document;
+    }
+}
@@ -0,0 +1,150 @@
+package fr.fullstack.shopapp.benchmark;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.StringJoiner;
+import java.util.concurrent.Executors;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Stands in for Elasticsearch during a load test, so that the application starts and indexes
+ * without a cluster: indices exist, writes are acknowledged and searches find nothing. The
+ * search endpoint then measures the application side of a search only.
+ * <p>
+ * Usage: {@code --port=9200}
+ */
+public class ElasticsearchStub {
+
+    private static final Pattern BULK_ACTION = Pattern.compile("^\\{\\s*\"(index|create|update|delete)\"\\s*:(.*)$");
+
+    private static final Pattern BULK_ID = Pattern.compile("\"_id\"\\s*:\\s*\"?([^\",}]+)");
+
+    private static final Pattern BULK_INDEX = Pattern.compile("\"_index\"\\s*:\\s*\"([^\"]+)\"");
+
+    private static final String SHARDS = "\"_shards\":{\"total\":1,\"successful\":1,\"skipped\":0,\"failed\":0}";
+
+    private final HttpServer server;
+
+    public ElasticsearchStub(int port) throws IOException {
+        server = HttpServer.create(new InetSocketAddress(port), 0);
+        server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+        server.createContext("/", this::handle);
+    }
+
+    public static void main(String[] args) throws IOException {
+        CommandLineArguments arguments = new CommandLineArguments(args);
+        ElasticsearchStub stub = new ElasticsearchStub(arguments.getInt("port", 9200));
+        stub.start();
+        System.out.printf("Elasticsearch stub listening on port %d%n", stub.server.getAddress().getPort());
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    public void stop() {
+        server.stop(0);
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            String body = read(exchange.getRequestBody());
+            String method = exchange.getRequestMethod();
+            String[] path = exchange.getRequestURI().getPath().replaceAll("^/+|/+$", "").split("/");
+            String index = path[0];
+
+            if (index.isEmpty()) {
+                respond(exchange, 200, "{\"name\":\"stub\",\"cluster_name\":\"stub\",\"cluster_uuid\":\"stub\","
+                        + "\"version\":{\"number\":\"8.13.4\",\"build_flavor\":\"default\",\"build_type\":\"tar\","
+                        + "\"build_hash\":\"stub\",\"build_date\":\"2024-05-06T22:04:45.107454559Z\","
+                        + "\"build_snapshot\":false,\"lucene_version\":\"9.10.0\","
+                        + "\"minimum_wire_compatibility_version\":\"7.17.0\","
+                        + "\"minimum_index_compatibility_version\":\"7.0.0\"},\"tagline\":\"You Know, for Search\"}");
+            } else if (index.equals("_cluster")) {
+                respond(exchange, 200, "{\"cluster_name\":\"stub\",\"status\":\"green\",\"timed_out\":false,"
+                        + "\"number_of_nodes\":1,\"number_of_data_nodes\":1,\"active_primary_shards\":0,"
+                        + "\"active_shards\":0,\"relocating_shards\":0,\"initializing_shards\":0,"
+                        + "\"unassigned_shards\":0,\"delayed_unassigned_shards\":0,\"number_of_pending_tasks\":0,"
+                        + "\"number_of_in_flight_fetch\":0,\"task_max_waiting_in_queue_millis\":0,"
+                        + "\"active_shards_percent_as_number\":100.0}");
+            } else if (index.equals("_bulk") || path.length > 1 && path[1].equals("_bulk")) {
+                respond(exchange, 200, bulk(body, index));
+            } else if (path.length == 1) {
+                // Index exists, created or deleted
+                respond(exchange, 200, method.equals("HEAD") ? null
+                        : "{\"acknowledged\":true,\"shards_acknowledged\":true,\"index\":\"" + index + "\"}");
+            } else {
+                switch (path[1]) {
+                    case "_search" -> respond(exchange, 200, "{\"took\":0,\"timed_out\":false," + SHARDS + ","
+                            + "\"hits\":{\"total\":{\"value\":0,\"relation\":\"eq\"},\"max_score\":null,\"hits\":[]}}");
+                    case "_count" -> respond(exchange, 200, "{\"count\":0," + SHARDS + "}");
+                    case "_refresh", "_flush" -> respond(exchange, 200, "{" + SHARDS + "}");
+                    case "_doc", "_create", "_update" -> respond(exchange, method.equals("GET") ? 404 : 200,
+                            document(index, path.length > 2 ? path[2] : "0", method));
+                    case "_delete_by_query" -> respond(exchange, 200, "{\"took\":0,\"timed_out\":false,\"total\":0,"
+                            + "\"deleted\":0,\"batches\":0,\"version_conflicts\":0,\"noops\":0,"
+                            + "\"retries\":{\"bulk\":0,\"search\":0},\"throttled_millis\":0,"
+                            + "\"requests_per_second\":-1.0,\"throttled_until_millis\":0,\"failures\":[]}");
+                    // Mappings, settings and aliases
+                    default -> respond(exchange, 200, "{\"acknowledged\":true}");
+                }
+            }
+        }
+    }
+
+    private static String document(String index, String id, String method) {
+        if (method.equals("GET")) {
+            return "{\"_index\":\"" + index + "\",\"_id\":\"" + id + "\",\"found\":false}";
+        }
+        return "{\"_index\":\"" + index + "\",\"_id\":\"" + id + "\",\"_version\":1,\"result\":\""
+                + (method.equals("DELETE") ? "deleted" : "created") + "\"," + SHARDS + ",\"_seq_no\":0,\"_primary_term\":1}";
+    }
+
+    private static String bulk(String body, String defaultIndex) {
+        StringJoiner items = new StringJoiner(",", "{\"took\":0,\"errors\":false,\"items\":[", "]}");
+        String[] lines = body.split("\n");
+        for (int i = 0; i < lines.length; i++) {
+            Matcher action = BULK_ACTION.matcher(lines[i].trim());
+            if (!action.matches()) {
+                continue;
+            }
+            String operation = action.group(1);
+            Matcher id = BULK_ID.matcher(action.group(2));
+            Matcher index = BULK_INDEX.matcher(action.group(2));
+            String document = document(index.find() ? index.group(1) : defaultIndex, id.find() ? id.group(1) : String.valueOf(i),
+                    operation.equals("delete") ? "DELETE" : "PUT");
+            items.add("{\"" + operation + "\":" + document.substring(0, document.length() - 1)
+                    + ",\"status\":" + (operation.equals("index") || operation.equals("create") ? 201 : 200) + "}}");
+            if (!operation.equals("delete")) {
+                // Skips the source of the document
+                i++;
+            }
+        }
+        return items.toString();
+    }
+
+    private static String read(InputStream in) throws IOException {
+        return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        exchange.getResponseHeaders().set("X-Elastic-Product", "Elasticsearch");
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        if (body == null) {
+            exchange.sendResponseHeaders(status, -1);
+            return;
+        }
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+}
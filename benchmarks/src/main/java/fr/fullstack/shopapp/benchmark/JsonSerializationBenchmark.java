@@ -0,0 +1,69 @@
+package fr.fullstack.shopapp.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import fr.fullstack.shopapp.config.ElasticConfig;
+import fr.fullstack.shopapp.model.Product;
+import fr.fullstack.shopapp.model.Shop;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Jackson round trips of the Shop and Product graphs with the ObjectMapper built by ElasticConfig.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class JsonSerializationBenchmark {
+
+    private ObjectMapper objectMapper;
+
+    private Product product;
+
+    private byte[] productJson;
+
+    private Shop shop;
+
+    private byte[] shopJson;
+
+    @Setup
+    public void setUp() throws Exception {
+        objectMapper = new ElasticConfig().objectMapper();
+        shop = ShopFixtures.shop(1, 2);
+        product = ShopFixtures.product(1, shop, 3);
+        shopJson = objectMapper.writeValueAsBytes(shop);
+        productJson = objectMapper.writeValueAsBytes(product);
+    }
+
+    @Benchmark
+    public Product readProduct() throws Exception {
+        return objectMapper.readValue(productJson, Product.class);
+    }
+
+    @Benchmark
+    public Shop readShop() throws Exception {
+        return objectMapper.readValue(shopJson, Shop.class);
+    }
+
+    @Benchmark
+    public byte[] writeProduct() throws Exception {
+        return objectMapper.writeValueAsBytes(product);
+    }
+
+    @Benchmark
+    public byte[] writeShop() throws Exception {
+        return objectMapper.writeValueAsBytes(shop);
+    }
+}
@@ -0,0 +1,59 @@
+package fr.fullstack.shopapp.benchmark;
+
+import java.util.Arrays;
+
+/**
+ * Latencies of one endpoint, recorded by a single worker then merged. Every sample is kept, so
+ * that percentiles are exact: a load test of a few minutes stays within a few million samples.
+ */
+final class LatencyRecorder {
+
+    private long[] samples = new long[1024];
+    private int count;
+    private int errors;
+    private boolean sorted;
+
+    void record(long nanos, boolean error) {
+        if (count == samples.length) {
+            samples = Arrays.copyOf(samples, count * 2);
+        }
+        samples[count++] = nanos;
+        if (error) {
+            errors++;
+        }
+        sorted = false;
+    }
+
+    void merge(LatencyRecorder other) {
+        if (count + other.count > samples.length) {
+            samples = Arrays.copyOf(samples, Math.max(samples.length * 2, count + other.count));
+        }
+        System.arraycopy(other.samples, 0, samples, count, other.count);
+        count += other.count;
+        errors += other.errors;
+        sorted = false;
+    }
+
+    int count() {
+        return count;
+    }
+
+    int errors() {
+        return errors;
+    }
+
+    /**
+     * Latency in nanoseconds below which {@code quantile} of the samples are, 0 without samples.
+     */
+    long percentile(double quantile) {
+        if (count == 0) {
+            return 0;
+        }
+        if (!sorted) {
+            Arrays.sort(samples, 0, count);
+            sorted = true;
+        }
+        int rank = (int) Math.ceil(quantile * count);
+        return samples[Math.max(0, Math.min(count, rank) - 1)];
+    }
+}
@@ -0,0 +1,164 @@
+package fr.fullstack.shopapp.benchmark;
+
+import fr.fullstack.shopapp.dto.CursorPage;
+import fr.fullstack.shopapp.model.Category;
+import fr.fullstack.shopapp.model.Product;
+import fr.fullstack.shopapp.model.Shop;
+import fr.fullstack.shopapp.service.CategoryService;
+import fr.fullstack.shopapp.service.OpeningHoursIndex;
+import fr.fullstack.shopapp.service.ProductService;
+import fr.fullstack.shopapp.service.ShopService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.jdbc.datasource.init.ScriptUtils;
+
+import javax.sql.DataSource;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Listing methods of the services against an embedded database seeded with sql/fill_tables.sql.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ListingBenchmark {
+
+    private static final Pageable FIRST_PAGE = PageRequest.of(0, 20);
+
+    private CategoryService categoryService;
+
+    private ConfigurableApplicationContext context;
+
+    private ProductService productService;
+
+    private ShopService shopService;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        context = new SpringApplicationBuilder(ListingBenchmarkApplication.class)
+                .web(WebApplicationType.NONE)
+                .properties(
+                        "spring.config.name=benchmark",
+                        "spring.datasource.url=jdbc:h2:mem:shop;MODE=PostgreSQL;DATABASE_TO_LOWER=TRUE",
+                        "spring.jpa.hibernate.ddl-auto=create",
+                        "spring.cache.type=none",
+                        "spring.autoconfigure.exclude="
+                                + "org.springframework.boot.autoconfigure.elasticsearch.ElasticsearchClientAutoConfiguration,"
+                                + "org.springframework.boot.autoconfigure.elasticsearch.ElasticsearchRestClientAutoConfiguration,"
+                                + "org.springframework.boot.autoconfigure.data.elasticsearch.ElasticsearchDataAutoConfiguration,"
+                                + "org.springframework.boot.autoconfigure.data.elasticsearch.ElasticsearchRepositoriesAutoConfiguration"
+                )
+                .run();
+        seed(context.getBean(DataSource.class));
+        // Built at startup, before the seed
+        context.getBean(OpeningHoursIndex.class).rebuild();
+
+        categoryService = context.getBean(CategoryService.class);
+        productService = context.getBean(ProductService.class);
+        shopService = context.getBean(ShopService.class);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public Page<Category> categories() {
+        return categoryService.getCategoryList(FIRST_PAGE);
+    }
+
+    @Benchmark
+    public Page<Product> products() {
+        return productService.getShopProductList(Optional.empty(), Optional.empty(), FIRST_PAGE);
+    }
+
+    @Benchmark
+    public CursorPage<Product> productsByCursor() {
+        return productService.getShopProductListAfter(Optional.empty(), Optional.empty(), Optional.empty(), 20);
+    }
+
+    @Benchmark
+    public Page<Product> productsOfShop() {
+        return productService.getShopProductList(Optional.of(1L), Optional.empty(), FIRST_PAGE);
+    }
+
+    @Benchmark
+    public Page<Shop> shops() {
+        return shopService.getShopList(
+                Optional.empty(), Optional.empty(), Optional.empty(), Optional.empty(), Optional.empty(), FIRST_PAGE
+        );
+    }
+
+    @Benchmark
+    public Page<Shop> shopsInVacations() {
+        return shopService.getShopList(
+                Optional.empty(), Optional.empty(), Optional.of(true), Optional.empty(), Optional.empty(), FIRST_PAGE
+        );
+    }
+
+    @Benchmark
+    public Page<Shop> shopsFilteredAndSorted() {
+        return shopService.getShopList(
+                Optional.of("a"), Optional.of("nbProducts"), Optional.of(false), Optional.of("2000-01-01"),
+                Optional.of("2100-01-01"), FIRST_PAGE
+        );
+    }
+
+    @Benchmark
+    public Page<Shop> shopsOpenAt() {
+        return shopService.getOpenShopList("3-10:00", FIRST_PAGE);
+    }
+
+    @Benchmark
+    public Page<Shop> shopsSortedByName() {
+        return shopService.getShopList(
+                Optional.empty(), Optional.of("name"), Optional.empty(), Optional.empty(), Optional.empty(), FIRST_PAGE
+        );
+    }
+
+    @Benchmark
+    public Page<Shop> shopsSortedByNbProducts() {
+        return shopService.getShopList(
+                Optional.empty(), Optional.of("nbProducts"), Optional.empty(), Optional.empty(), Optional.empty(),
+                FIRST_PAGE
+        );
+    }
+
+    private void seed(DataSource dataSource) throws Exception {
+        Path script = Path.of(System.getProperty(ShopFixtures.SQL_DIR_PROPERTY, "../sql"), "fill_tables.sql");
+        // The sequences are created by Hibernate, the statements on them are PostgreSQL only
+        String sql = Files.readAllLines(script, StandardCharsets.UTF_8).stream()
+                .filter(line -> !line.startsWith("create sequence") && !line.startsWith("select setval"))
+                .collect(Collectors.joining("\n"));
+        try (Connection connection = dataSource.getConnection()) {
+            ScriptUtils.executeSqlScript(connection, new ByteArrayResource(sql.getBytes(StandardCharsets.UTF_8)));
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package fr.fullstack.shopapp.benchmark;
+
+import fr.fullstack.shopapp.config.CacheConfig;
+import fr.fullstack.shopapp.model.Shop;
+import fr.fullstack.shopapp.repository.jpa.ShopRepository;
+import fr.fullstack.shopapp.service.CategoryService;
+import fr.fullstack.shopapp.service.EntityCacheInvalidator;
+import fr.fullstack.shopapp.service.ListingResponseCache;
+import fr.fullstack.shopapp.service.OpeningHoursIndex;
+import fr.fullstack.shopapp.service.ProductService;
+import fr.fullstack.shopapp.service.ShopIndexOutboxService;
+import fr.fullstack.shopapp.service.ShopService;
+import org.springframework.boot.SpringBootConfiguration;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.autoconfigure.domain.EntityScan;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+
+/**
+ * The listing services on top of an embedded H2 database, without Elasticsearch: the listing paths
+ * benchmarked here never reach the index.
+ */
+@SpringBootConfiguration
+@EnableAutoConfiguration
+@EntityScan(basePackageClasses = Shop.class)
+@EnableJpaRepositories(basePackageClasses = ShopRepository.class)
+@Import({
+        CacheConfig.class,
+        CategoryService.class,
+        EntityCacheInvalidator.class,
+        ListingResponseCache.class,
+        OpeningHoursIndex.class,
+        ProductService.class,
+        ShopIndexOutboxService.class,
+        ShopService.class
+})
+public class ListingBenchmarkApplication {
+}
@@ -0,0 +1,194 @@
+package fr.fullstack.shopapp.benchmark;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+
+/**
+ * Replays a weighted mix of the /api/v1 read endpoints against a running application and reports
+ * the throughput and the latency percentiles of each endpoint.
+ * <p>
+ * Each worker sends its next request as soon as the previous one is answered (closed model). The
+ * ids are drawn among the ones of the {@link DatasetGenerator}, the small ones more often, so that
+ * some shops and products are hot. Requests sent during the warm-up are not reported.
+ * <p>
+ * Usage: {@code --base-url=http://localhost:8080 --duration=60s --warmup=10s --concurrency=64
+ * --shops=200000 --products=2000000 --categories=30 --seed=42 --mix=shops:30,shop:15,search:5}
+ */
+public class LoadDriver {
+
+    private static final String DEFAULT_MIX = "shops:25,shops-sorted:10,shops-cursor:5,shops-open:5,shop:15,"
+            + "products:10,product:15,categories:10,search:5";
+
+    private final HttpClient client = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .connectTimeout(Duration.ofSeconds(5))
+            .build();
+
+    private final String baseUrl;
+    private final int concurrency;
+    private final Duration duration;
+    private final Map<String, Function<SplittableRandom, String>> endpoints;
+    private final long seed;
+    private final Duration warmup;
+    private final String[] weightedEndpoints;
+
+    public LoadDriver(String baseUrl, Duration duration, Duration warmup, int concurrency, long seed,
+                      int nbShops, long nbProducts, int nbCategories, String mix) {
+        this.baseUrl = baseUrl;
+        this.duration = duration;
+        this.warmup = warmup;
+        this.concurrency = concurrency;
+        this.seed = seed;
+        this.endpoints = endpoints(nbShops, nbProducts, nbCategories);
+        this.weightedEndpoints = weightedEndpoints(mix);
+    }
+
+    public static void main(String[] args) throws Exception {
+        CommandLineArguments arguments = new CommandLineArguments(args);
+        new LoadDriver(
+                arguments.getString("base-url", "http://localhost:8080"),
+                arguments.getDuration("duration", Duration.ofSeconds(60)),
+                arguments.getDuration("warmup", Duration.ofSeconds(10)),
+                arguments.getInt("concurrency", 64),
+                arguments.getLong("seed", 42),
+                arguments.getInt("shops", 200_000),
+                arguments.getLong("products", 2_000_000),
+                arguments.getInt("categories", Vocabulary.CATEGORIES.size()),
+                arguments.getString("mix", DEFAULT_MIX)
+        ).run();
+    }
+
+    public void run() throws Exception {
+        long start = System.nanoTime();
+        long measureFrom = start + warmup.toNanos();
+        long end = measureFrom + duration.toNanos();
+        List<Future<Map<String, LatencyRecorder>>> workers = new ArrayList<>();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < concurrency; i++) {
+                SplittableRandom random = new SplittableRandom(seed + i);
+                workers.add(executor.submit(() -> work(random, measureFrom, end)));
+            }
+        }
+
+        Map<String, LatencyRecorder> results = new LinkedHashMap<>();
+        endpoints.keySet().forEach(name -> results.put(name, new LatencyRecorder()));
+        for (Future<Map<String, LatencyRecorder>> worker : workers) {
+            worker.get().forEach((name, recorder) -> results.get(name).merge(recorder));
+        }
+        report(results, (double) duration.toNanos() / 1_000_000_000);
+    }
+
+    private Map<String, LatencyRecorder> work(SplittableRandom random, long measureFrom, long end) {
+        Map<String, LatencyRecorder> recorders = new LinkedHashMap<>();
+        long now = System.nanoTime();
+        while (now < end) {
+            String name = weightedEndpoints[random.nextInt(weightedEndpoints.length)];
+            HttpRequest request = HttpRequest.newBuilder(URI.create(baseUrl + endpoints.get(name).apply(random)))
+                    .timeout(Duration.ofSeconds(30))
+                    .header("Accept-Encoding", "gzip")
+                    .GET()
+                    .build();
+            boolean error;
+            try {
+                error = client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode() >= 400;
+            } catch (IOException e) {
+                error = true;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+            long sent = now;
+            now = System.nanoTime();
+            if (sent >= measureFrom && now < end) {
+                recorders.computeIfAbsent(name, n -> new LatencyRecorder()).record(now - sent, error);
+            }
+        }
+        return recorders;
+    }
+
+    private static void report(Map<String, LatencyRecorder> results, double seconds) {
+        System.out.printf("%-14s %9s %7s %9s %9s %9s %9s %9s %9s%n",
+                "endpoint", "requests", "errors", "req/s", "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "max ms");
+        LatencyRecorder total = new LatencyRecorder();
+        results.forEach((name, recorder) -> {
+            if (recorder.count() > 0) {
+                print(name, recorder, seconds);
+                total.merge(recorder);
+            }
+        });
+        print("total", total, seconds);
+    }
+
+    private static void print(String name, LatencyRecorder recorder, double seconds) {
+        System.out.printf("%-14s %9d %7d %9.1f %9.2f %9.2f %9.2f %9.2f %9.2f%n",
+                name, recorder.count(), recorder.errors(), recorder.count() / seconds,
+                recorder.percentile(0.5) / 1e6, recorder.percentile(0.9) / 1e6, recorder.percentile(0.99) / 1e6,
+                recorder.percentile(0.999) / 1e6, recorder.percentile(1) / 1e6);
+    }
+
+    private static Map<String, Function<SplittableRandom, String>> endpoints(int nbShops, long nbProducts, int nbCategories) {
+        Map<String, Function<SplittableRandom, String>> endpoints = new LinkedHashMap<>();
+        endpoints.put("shops", random -> "/api/v1/shops?page=" + firstPages(random) + "&size=20");
+        endpoints.put("shops-sorted", random -> "/api/v1/shops?page=" + firstPages(random) + "&size=20&sortBy="
+                + (random.nextBoolean() ? "name" : "nbProducts"));
+        endpoints.put("shops-cursor", random -> "/api/v1/shops/cursor?size=20&sortBy=createdAt");
+        endpoints.put("shops-open", random -> "/api/v1/shops?openAt=now&page=" + firstPages(random) + "&size=20");
+        endpoints.put("shop", random -> "/api/v1/shops/" + hotId(random, nbShops));
+        endpoints.put("products", random -> "/api/v1/products?shopId=" + hotId(random, nbShops) + "&page=0&size=20");
+        endpoints.put("product", random -> "/api/v1/products/" + hotId(random, nbProducts)
+                + (random.nextBoolean() ? "?locale=en" : ""));
+        endpoints.put("categories", random -> "/api/v1/categories?page=" + random.nextInt(Math.max(1, nbCategories / 20))
+                + "&size=20");
+        endpoints.put("search", random -> "/api/v1/shops/search?q="
+                + URLEncoder.encode(Vocabulary.searchWord(random), StandardCharsets.UTF_8));
+        return endpoints;
+    }
+
+    // Mostly the first page, as a user would browse
+    private static int firstPages(SplittableRandom random) {
+        int page = 0;
+        while (page < 9 && random.nextInt(3) == 0) {
+            page++;
+        }
+        return page;
+    }
+
+    // Squaring a uniform draw favours the small ids: a quarter of the requests hit 6% of the ids
+    private static long hotId(SplittableRandom random, long max) {
+        double u = random.nextDouble();
+        return 1 + (long) (u * u * max);
+    }
+
+    private String[] weightedEndpoints(String mix) {
+        List<String> weighted = new ArrayList<>();
+        for (String entry : mix.split(",")) {
+            String[] nameAndWeight = entry.trim().split(":");
+            if (nameAndWeight.length != 2 || !endpoints.containsKey(nameAndWeight[0])) {
+                throw new IllegalArgumentException("Unknown endpoint in --mix: " + entry + ", expected one of "
+                        + endpoints.keySet() + " followed by :weight");
+            }
+            for (int i = 0; i < Integer.parseInt(nameAndWeight[1]); i++) {
+                weighted.add(nameAndWeight[0]);
+            }
+        }
+        if (weighted.isEmpty()) {
+            throw new IllegalArgumentException("--mix has no weight");
+        }
+        return weighted.toArray(String[]::new);
+    }
+}
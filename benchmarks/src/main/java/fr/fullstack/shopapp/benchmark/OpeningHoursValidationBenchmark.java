@@ -0,0 +1,47 @@
+package fr.fullstack.shopapp.benchmark;
+
+import fr.fullstack.shopapp.model.OpeningHoursShop;
+import fr.fullstack.shopapp.service.OpeningHoursRules;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Overlap validation run by ShopService on every shop creation and update.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class OpeningHoursValidationBenchmark {
+
+    // 1 and 2 slots a day are the common schedules, 8 is an unusually fragmented one
+    @Param({"1", "2", "8"})
+    private int slotsPerDay;
+
+    private List<OpeningHoursShop> openingHours;
+
+    @Setup
+    public void setUp() {
+        openingHours = ShopFixtures.openingHours(slotsPerDay);
+    }
+
+    @Benchmark
+    public List<OpeningHoursShop> validate() {
+        OpeningHoursRules.validate(openingHours);
+        return openingHours;
+    }
+}
@@ -0,0 +1,80 @@
+package fr.fullstack.shopapp.benchmark;
+
+import fr.fullstack.shopapp.model.Category;
+import fr.fullstack.shopapp.model.LocalizedProduct;
+import fr.fullstack.shopapp.model.OpeningHoursShop;
+import fr.fullstack.shopapp.model.Product;
+import fr.fullstack.shopapp.model.Shop;
+
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Entity graphs shaped like the data of sql/fill_tables.sql.
+ */
+final class ShopFixtures {
+
+    static final String SQL_DIR_PROPERTY = "shop.sql.dir";
+
+    private ShopFixtures() {
+    }
+
+    /**
+     * Non overlapping schedule of {@code slotsPerDay} slots on each day of the week.
+     */
+    static List<OpeningHoursShop> openingHours(int slotsPerDay) {
+        List<OpeningHoursShop> openingHours = new ArrayList<>();
+        int slotMinutes = 24 * 60 / slotsPerDay;
+        for (int day = 1; day <= 7; day++) {
+            for (int slot = 0; slot < slotsPerDay; slot++) {
+                OpeningHoursShop hours = new OpeningHoursShop();
+                hours.setDay(day);
+                hours.setOpenAt(LocalTime.MIN.plusMinutes((long) slot * slotMinutes));
+                hours.setCloseAt(LocalTime.MIN.plusMinutes((long) slot * slotMinutes + slotMinutes - 1));
+                openingHours.add(hours);
+            }
+        }
+        return openingHours;
+    }
+
+    static Product product(long id, Shop shop, int nbCategories) {
+        Product product = new Product();
+        product.setId(id);
+        product.setPrice(19.99f);
+        product.setShop(shop);
+        product.setLocalizedProducts(List.of(
+                localizedProduct(id * 2, "FR", "Produit " + id, "Description du produit " + id),
+                localizedProduct(id * 2 + 1, "EN", "Product " + id, "Description of product " + id)
+        ));
+        List<Category> categories = new ArrayList<>();
+        for (int i = 1; i <= nbCategories; i++) {
+            Category category = new Category();
+            category.setId(i);
+            category.setName("Catégorie " + i);
+            categories.add(category);
+        }
+        product.setCategories(categories);
+        return product;
+    }
+
+    static Shop shop(long id, int slotsPerDay) {
+        Shop shop = new Shop();
+        shop.setId(id);
+        shop.setName("Boutique " + id);
+        shop.setInVacations(false);
+        shop.setNbProducts(10);
+        shop.setNbCategories(3);
+        shop.setOpeningHours(openingHours(slotsPerDay));
+        return shop;
+    }
+
+    private static LocalizedProduct localizedProduct(long id, String locale, String name, String description) {
+        LocalizedProduct localizedProduct = new LocalizedProduct();
+        localizedProduct.setId(id);
+        localizedProduct.setLocale(locale);
+        localizedProduct.setName(name);
+        localizedProduct.setDescription(description);
+        return localizedProduct;
+    }
+}
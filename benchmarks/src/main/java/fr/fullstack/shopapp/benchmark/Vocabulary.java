@@ -0,0 +1,67 @@
+package fr.fullstack.shopapp.benchmark;
+
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * Words of the generated shops, products and categories, also used by the load driver to build
+ * searches that match them. Product words are aligned between french and english.
+ */
+final class Vocabulary {
+
+    static final List<String> CATEGORIES = List.of(
+            "Alimentation", "Boissons", "Boulangerie", "Épicerie fine", "Fruits et légumes", "Fromages",
+            "Vins", "Mode femme", "Mode homme", "Enfants", "Chaussures", "Bijoux", "Beauté", "Santé",
+            "Maison", "Décoration", "Jardin", "Bricolage", "Électroménager", "Informatique", "Téléphonie",
+            "Jeux vidéo", "Jouets", "Livres", "Musique", "Papeterie", "Sport", "Vélo", "Animaux", "Auto"
+    );
+
+    static final List<String> PRODUCT_ADJECTIVES_EN = List.of(
+            "organic", "handmade", "vintage", "classic", "modern", "light", "premium", "local", "soft", "large",
+            "small", "red", "blue", "green", "black", "white", "wooden", "golden", "fresh", "smart"
+    );
+
+    static final List<String> PRODUCT_ADJECTIVES_FR = List.of(
+            "bio", "artisanal", "vintage", "classique", "moderne", "léger", "premium", "local", "doux", "grand",
+            "petit", "rouge", "bleu", "vert", "noir", "blanc", "en bois", "doré", "frais", "connecté"
+    );
+
+    static final List<String> PRODUCT_NOUNS_EN = List.of(
+            "bread", "cheese", "wine", "coffee", "tea", "honey", "jacket", "shirt", "dress", "shoes", "ring",
+            "necklace", "lamp", "chair", "table", "candle", "plant", "hammer", "laptop", "phone", "headphones",
+            "game", "puzzle", "book", "record", "notebook", "ball", "bike", "collar", "tyre"
+    );
+
+    static final List<String> PRODUCT_NOUNS_FR = List.of(
+            "pain", "fromage", "vin", "café", "thé", "miel", "veste", "chemise", "robe", "chaussures", "bague",
+            "collier", "lampe", "chaise", "table", "bougie", "plante", "marteau", "ordinateur", "téléphone",
+            "casque", "jeu", "puzzle", "livre", "disque", "carnet", "ballon", "vélo", "collier", "pneu"
+    );
+
+    static final List<String> SHOP_KINDS = List.of(
+            "Boutique", "Maison", "Atelier", "Comptoir", "Épicerie", "Bazar", "Galerie", "Marché", "Cave", "Studio"
+    );
+
+    static final List<String> SHOP_PLACES = List.of(
+            "du Port", "de la Gare", "du Centre", "des Halles", "du Marché", "de la Place", "du Parc", "des Arts",
+            "du Quai", "de la Colline", "du Moulin", "des Lilas", "du Château", "de l'Église", "du Pont"
+    );
+
+    private Vocabulary() {
+    }
+
+    static <T> T pick(List<T> words, SplittableRandom random) {
+        return words.get(random.nextInt(words.size()));
+    }
+
+    /**
+     * A word the generated data is likely to contain, in french or in english.
+     */
+    static String searchWord(SplittableRandom random) {
+        return switch (random.nextInt(3)) {
+            case 0 -> pick(PRODUCT_NOUNS_FR, random);
+            case 1 -> pick(PRODUCT_NOUNS_EN, random);
+            default -> pick(SHOP_PLACES, random).replaceFirst("^(du|de la|des|de l') ?", "");
+        };
+    }
+}
@@ -1,6 +1,9 @@
+create extension if not exists pg_trgm;
+
 create table categories (
     id int8 not null,
     name varchar(255) not null,
+    version bigint not null default 0,
     primary key (id)
 );
 
@@ -24,6 +27,7 @@ create table products (
     id int8 not null,
     price float4 not null,
     shop_id int8,
+    version bigint not null default 0,
     primary key (id)
 );
 
@@ -42,6 +46,10 @@ create table shops (
     created_at date not null,
     in_vacations boolean not null,
     name varchar(255) not null,
+    nb_products bigint not null default 0,
+    nb_categories bigint not null default 0,
+    version bigint not null default 0,
+    updated_at timestamp(6) with time zone not null default now(),
     primary key (id)
 );
 
@@ -50,6 +58,16 @@ create table shops_opening_hours (
     opening_hours_id int8 not null
 );
 
+create table shop_index_outbox (
+    id bigserial not null,
+    attempts int4 not null,
+    created_at timestamp(6) with time zone not null,
+    next_attempt_at timestamp(6) with time zone not null,
+    parked_at timestamp(6) with time zone,
+    shop_id int8 not null,
+    primary key (id)
+);
+
 create table translation (
     id int8 not null,
     field_type varchar(255) not null,
@@ -58,6 +76,18 @@ create table translation (
     primary key (id)
 );
 
+-- Identifiants : séquences aux noms implicites de Hibernate 6 (<entité>_seq), réservées par blocs
+-- de 50
+create sequence if not exists category_seq start 1 increment 50;
+
+create sequence if not exists localized_product_seq start 1 increment 50;
+
+create sequence if not exists opening_hours_shop_seq start 1 increment 50;
+
+create sequence if not exists product_seq start 1 increment 50;
+
+create sequence if not exists shop_seq start 1 increment 50;
+
 alter table products_localized_product
 add constraint UK_n8q0vltkv2dgjclj2aqn26l03 unique(localized_product_id);
 
@@ -84,3 +114,37 @@ add constraint FKti43xlm3mfbeodhgi4qn1yhgw foreign key (opening_hours_id) refere
 
 alter table shops_opening_hours
 add constraint FK8dcjdnasobclsvyy8wjfki7gj foreign key (shop_id) references shops;
+
+create index idx_shops_name on shops (name, id);
+
+create index idx_shops_created_at on shops (created_at, id);
+
+create index idx_shops_nb_products on shops (nb_products desc, id);
+
+create index idx_shops_nb_categories on shops (nb_categories desc, id);
+
+create index idx_shops_in_vacations_name on shops (in_vacations, name, id);
+
+create index idx_shops_in_vacations_created_at on shops (in_vacations, created_at, id);
+
+create index idx_shops_in_vacations_nb_products on shops (in_vacations, nb_products desc, id);
+
+create index idx_shops_in_vacations_nb_categories on shops (in_vacations, nb_categories desc, id);
+
+create index idx_shops_in_vacations_id on shops (in_vacations, id);
+
+-- Recherche "contient" sur le nom (lower(name) like '%...%')
+create index idx_shops_name_trgm on shops using gin (lower(name) gin_trgm_ops);
+
+create index idx_shops_updated_at on shops (updated_at, id);
+
+create index idx_products_shop_id on products (shop_id, id);
+
+create index idx_products_categories_product_id on products_categories (product_id);
+
+create index idx_products_categories_category_id on products_categories (category_id);
+
+create index idx_shop_index_outbox_next_attempt_at on shop_index_outbox (next_attempt_at, id);
+
+-- updated_at des boutiques, lu par la réindexation incrémentale : ses triggers sont installés au
+-- démarrage par l'application, voir src/main/resources/db/updated-at-triggers.sql
@@ -718,4 +718,13 @@ insert into products_categories (product_id, category_id) values (292, 45);
 
 -- Hibernate Sequence --
 
-create sequence hibernate_sequence start 295 increment 1;
\ No newline at end of file
+create sequence hibernate_sequence start 295 increment 1;
+
+-- Séquences des entités : placées après les identifiants insérés ci-dessus, le prochain bloc de 50
+-- commence au-delà (à lancer aussi sur une base déjà remplie par ce script)
+
+select setval('category_seq', greatest((select last_value from category_seq), (select max(id) from categories)));
+select setval('localized_product_seq', greatest((select last_value from localized_product_seq), (select max(id) from localized_product)));
+select setval('opening_hours_shop_seq', greatest((select last_value from opening_hours_shop_seq), (select max(id) from opening_hours)));
+select setval('product_seq', greatest((select last_value from product_seq), (select max(id) from products)));
+select setval('shop_seq', greatest((select last_value from shop_seq), (select max(id) from shops)));
@@ -4,9 +4,11 @@ import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.data.elasticsearch.repository.config.EnableElasticsearchRepositories;
 import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @EnableElasticsearchRepositories(basePackages = "fr.fullstack.shopapp.repository.elastic")
 @EnableJpaRepositories(basePackages = "fr.fullstack.shopapp.repository.jpa")
+@EnableScheduling
 @SpringBootApplication
 public class ShopAppApplication {
 
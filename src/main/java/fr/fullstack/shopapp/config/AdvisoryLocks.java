@@ -0,0 +1,58 @@
+package fr.fullstack.shopapp.config;
+
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Runs the scheduled jobs that must not run on several instances at once under a PostgreSQL
+ * session advisory lock, the instances that do not get it skip their run. The lock belongs to a
+ * connection kept for the length of the job, so it is released with the connection if the
+ * instance dies. On other databases the job just runs.
+ */
+@Component
+public class AdvisoryLocks {
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public AdvisoryLocks(DataSource dataSource) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+    }
+
+    /**
+     * @return whether the job ran, false when another instance holds the lock
+     */
+    public boolean runExclusively(String name, Runnable job) {
+        Boolean ran = jdbcTemplate.execute((ConnectionCallback<Boolean>) connection -> {
+            if (!"PostgreSQL".equals(connection.getMetaData().getDatabaseProductName())) {
+                job.run();
+                return true;
+            }
+            if (!advisoryLock(connection, "select pg_try_advisory_lock(hashtext(?))", name)) {
+                return false;
+            }
+            try {
+                job.run();
+            } finally {
+                advisoryLock(connection, "select pg_advisory_unlock(hashtext(?))", name);
+            }
+            return true;
+        });
+        return Boolean.TRUE.equals(ran);
+    }
+
+    private static boolean advisoryLock(Connection connection, String sql, String name) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            statement.setString(1, name);
+            try (ResultSet result = statement.executeQuery()) {
+                return result.next() && result.getBoolean(1);
+            }
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package fr.fullstack.shopapp.config;
+
+import fr.fullstack.shopapp.service.ListingResponseCache;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+@ConditionalOnProperty(name = "shop.response-cache.enabled", havingValue = "true", matchIfMissing = true)
+public class ListingResponseCacheConfig {
+
+    @Bean
+    public FilterRegistrationBean<ListingResponseCacheFilter> listingResponseCacheFilter(
+            ListingResponseCache cache,
+            @Value("${shop.response-cache.max-page:3}") int maxPage
+    ) {
+        FilterRegistrationBean<ListingResponseCacheFilter> registration = new FilterRegistrationBean<>(
+                new ListingResponseCacheFilter(cache, maxPage)
+        );
+        registration.addUrlPatterns("/api/v1/shops", "/api/v1/categories");
+        return registration;
+    }
+}
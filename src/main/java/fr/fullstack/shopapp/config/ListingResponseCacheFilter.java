@@ -0,0 +1,131 @@
+package fr.fullstack.shopapp.config;
+
+import fr.fullstack.shopapp.service.ListingResponseCache;
+import fr.fullstack.shopapp.service.ListingResponseCache.CachedResponse;
+import fr.fullstack.shopapp.service.ListingResponseCache.Listing;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.util.ContentCachingResponseWrapper;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Serves the first pages of the shops (default, name and nbProducts sorts) and categories
+ * listings from the {@link ListingResponseCache}. Any other filter, sort or page goes through to
+ * the controllers uncached.
+ * <p>
+ * The pages to cache are read on the primary: a page read on a lagging replica would be cached
+ * under the generation of a write it does not show.
+ */
+public class ListingResponseCacheFilter extends OncePerRequestFilter {
+
+    private static final int DEFAULT_PAGE_SIZE = 20;
+
+    private static final Set<String> CACHED_SHOP_SORTS = Set.of("name", "nbProducts");
+
+    private final ListingResponseCache cache;
+    private final int maxPage;
+
+    public ListingResponseCacheFilter(ListingResponseCache cache, int maxPage) {
+        this.cache = cache;
+        this.maxPage = maxPage;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        Listing listing = request.getRequestURI().endsWith("/categories") ? Listing.CATEGORIES : Listing.SHOPS;
+        String parameters = HttpMethod.GET.matches(request.getMethod()) ? normalize(listing, request.getParameterMap()) : null;
+        if (parameters == null) {
+            chain.doFilter(request, response);
+            return;
+        }
+
+        // Cached pages may be served gzipped
+        response.setHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        // Taken before the query: a write committed meanwhile makes this entry unreachable
+        long generation = cache.generation(listing);
+        CachedResponse cached = cache.get(listing, generation, parameters);
+        if (cached != null) {
+            write(cached, request, response);
+            return;
+        }
+
+        ContentCachingResponseWrapper wrapper = new ContentCachingResponseWrapper(response);
+        Boolean previous = ReadReplicaDataSource.requirePrimary(true);
+        try {
+            chain.doFilter(request, wrapper);
+        } finally {
+            ReadReplicaDataSource.requirePrimary(previous);
+        }
+        if (wrapper.getStatus() == HttpStatus.OK.value()) {
+            cache.put(listing, generation, parameters, wrapper.getContentType(), wrapper.getHeader(HttpHeaders.ETAG),
+                    wrapper.getContentAsByteArray());
+        }
+        wrapper.copyBodyToResponse();
+    }
+
+    /**
+     * Canonical form of the parameters of a cached page, or null when the page is not cached.
+     */
+    private String normalize(Listing listing, Map<String, String[]> parameters) {
+        String sortBy = null;
+        int page = 0;
+        int size = DEFAULT_PAGE_SIZE;
+        try {
+            for (Map.Entry<String, String[]> parameter : parameters.entrySet()) {
+                if (parameter.getValue().length != 1) {
+                    return null;
+                }
+                String value = parameter.getValue()[0];
+                switch (parameter.getKey()) {
+                    case "page" -> page = Integer.parseInt(value);
+                    case "size" -> size = Integer.parseInt(value);
+                    case "sortBy" -> {
+                        if (listing != Listing.SHOPS || !CACHED_SHOP_SORTS.contains(value)) {
+                            return null;
+                        }
+                        sortBy = value;
+                    }
+                    default -> {
+                        return null;
+                    }
+                }
+            }
+        } catch (NumberFormatException e) {
+            // Left to the controller
+            return null;
+        }
+        if (page < 0 || page >= maxPage || size < 1) {
+            return null;
+        }
+        return (sortBy == null ? "" : sortBy) + "/" + page + "/" + size;
+    }
+
+    private static void write(CachedResponse cached, HttpServletRequest request, HttpServletResponse response)
+            throws IOException {
+        // Same revalidation as the controllers: weak and multiple If-None-Match values, ETag header set
+        if (cached.eTag() != null && new ServletWebRequest(request, response).checkNotModified(cached.eTag())) {
+            return;
+        }
+        byte[] body = cached.body();
+        String acceptEncoding = request.getHeader(HttpHeaders.ACCEPT_ENCODING);
+        if (cached.gzippedBody() != null && acceptEncoding != null && acceptEncoding.contains("gzip")) {
+            response.setHeader(HttpHeaders.CONTENT_ENCODING, "gzip");
+            body = cached.gzippedBody();
+        }
+        response.setStatus(HttpStatus.OK.value());
+        response.setContentType(cached.contentType());
+        response.setContentLength(body.length);
+        response.getOutputStream().write(body);
+    }
+}
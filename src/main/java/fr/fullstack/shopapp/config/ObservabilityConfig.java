@@ -0,0 +1,43 @@
+package fr.fullstack.shopapp.config;
+
+import io.micrometer.common.KeyValue;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.observation.Observation;
+import io.micrometer.observation.ObservationHandler;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class ObservabilityConfig {
+
+    /**
+     * Count the exceptions thrown by the observed services and Elasticsearch calls, by operation,
+     * for the error rate alerts.
+     */
+    @Bean
+    public ObservationHandler<Observation.Context> operationErrorCounter(MeterRegistry meterRegistry) {
+        return new ObservationHandler<>() {
+            @Override
+            public void onError(Observation.Context context) {
+                Throwable error = context.getError();
+                Counter.builder("shop.operation.errors")
+                        .description("Exceptions thrown by the services and the Elasticsearch calls")
+                        .tag("operation", context.getName())
+                        .tag("method", context.getLowCardinalityKeyValues().stream()
+                                .filter(keyValue -> keyValue.getKey().equals("method"))
+                                .map(KeyValue::getValue)
+                                .findFirst()
+                                .orElse("unknown"))
+                        .tag("exception", error == null ? "unknown" : error.getClass().getSimpleName())
+                        .register(meterRegistry)
+                        .increment();
+            }
+
+            @Override
+            public boolean supportsContext(Observation.Context context) {
+                return context.getName() != null && context.getName().startsWith("shop.");
+            }
+        };
+    }
+}
@@ -0,0 +1,60 @@
+package fr.fullstack.shopapp.config;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.HandlerInterceptor;
+
+/**
+ * Counts the SQL statements issued while handling a request, to catch N+1 loading regressions on
+ * the listing endpoints. Requests going over {@code shop.query-guard.max-statements} are logged,
+ * and fail when {@code shop.query-guard.strict} is enabled (development and CI).
+ */
+@Component
+public class QueryCountGuard implements StatementInspector, HandlerInterceptor {
+
+    private static final Logger log = LoggerFactory.getLogger(QueryCountGuard.class);
+
+    private static final ThreadLocal<int[]> COUNT = new ThreadLocal<>();
+
+    private final int maxStatements;
+    private final boolean strict;
+
+    public QueryCountGuard(
+            @Value("${shop.query-guard.max-statements:20}") int maxStatements,
+            @Value("${shop.query-guard.strict:false}") boolean strict
+    ) {
+        this.maxStatements = maxStatements;
+        this.strict = strict;
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+        int[] count = COUNT.get();
+        COUNT.remove();
+        if (count != null && count[0] > maxStatements) {
+            log.warn("{} {} issued {} SQL statements (max {})",
+                    request.getMethod(), request.getRequestURI(), count[0], maxStatements);
+        }
+    }
+
+    @Override
+    public String inspect(String sql) {
+        int[] count = COUNT.get();
+        // Only statements issued by a request are counted, not the ones of background jobs
+        if (count != null && ++count[0] > maxStatements && strict) {
+            throw new IllegalStateException("More than " + maxStatements + " SQL statements in a single request");
+        }
+        return sql;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        COUNT.set(new int[1]);
+        return true;
+    }
+}
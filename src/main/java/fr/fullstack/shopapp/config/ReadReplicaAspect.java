@@ -0,0 +1,32 @@
+package fr.fullstack.shopapp.config;
+
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * Lets the {@code @Transactional(readOnly = true)} methods of the shop, product and category
+ * services read from a replica. The other read-only transactions (indexing, reconciliations,
+ * export) stay on the primary, they must see the latest writes.
+ */
+@Aspect
+public class ReadReplicaAspect {
+
+    @Around("(within(fr.fullstack.shopapp.service.ShopService) "
+            + "|| within(fr.fullstack.shopapp.service.ProductService) "
+            + "|| within(fr.fullstack.shopapp.service.CategoryService)) "
+            + "&& @annotation(transactional)")
+    public Object routeReadOnly(ProceedingJoinPoint joinPoint, Transactional transactional) throws Throwable {
+        if (!transactional.readOnly()) {
+            return joinPoint.proceed();
+        }
+
+        Boolean previous = ReadReplicaDataSource.allowReplica(true);
+        try {
+            return joinPoint.proceed();
+        } finally {
+            ReadReplicaDataSource.allowReplica(previous);
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package fr.fullstack.shopapp.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.metrics.micrometer.MicrometerMetricsTrackerFactory;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Read replicas ({@code shop.datasource.replica.urls}): the read-only transactions of the shop,
+ * product and category services run on a replica pool, everything else on the primary pool of
+ * {@code spring.datasource.*}.
+ * <p>
+ * The connections are given by a {@link LazyConnectionDataSourceProxy}: the pool is chosen at the
+ * first statement, once the transaction is known to be read-only.
+ */
+@Configuration
+@ConditionalOnProperty(name = "shop.datasource.replica.urls")
+public class ReadReplicaConfig {
+
+    @Bean
+    @ConfigurationProperties("spring.datasource.hikari")
+    public HikariDataSource primaryDataSource(DataSourceProperties properties) {
+        return properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+    }
+
+    @Bean
+    @Primary
+    public DataSource dataSource(
+            HikariDataSource primaryDataSource,
+            MeterRegistry meterRegistry,
+            @Value("${shop.datasource.replica.urls}") List<String> urls,
+            @Value("${shop.datasource.replica.strategy:round-robin}") String strategy
+    ) {
+        // Same settings and credentials as the primary pool, started at their first connection
+        List<HikariDataSource> replicas = new ArrayList<>();
+        for (String url : urls) {
+            HikariDataSource replica = new HikariDataSource();
+            primaryDataSource.copyStateTo(replica);
+            replica.setJdbcUrl(url);
+            replica.setPoolName("replica-" + (replicas.size() + 1));
+            replica.setReadOnly(true);
+            replica.setMetricsTrackerFactory(new MicrometerMetricsTrackerFactory(meterRegistry));
+            replicas.add(replica);
+        }
+        ReadReplicaDataSource readOnlyDataSource = new ReadReplicaDataSource(
+                primaryDataSource,
+                replicas,
+                ReadReplicaDataSource.Selection.valueOf(strategy.toUpperCase(Locale.ROOT).replace('-', '_')),
+                meterRegistry
+        );
+
+        LazyConnectionDataSourceProxy dataSource = new LazyConnectionDataSourceProxy(primaryDataSource) {
+            // Closed with the context, the primary pool is closed as a bean of its own
+            public void close() {
+                readOnlyDataSource.close();
+            }
+        };
+        dataSource.setReadOnlyDataSource(readOnlyDataSource);
+        return dataSource;
+    }
+
+    @Bean
+    public ReadReplicaAspect readReplicaAspect() {
+        return new ReadReplicaAspect();
+    }
+
+    @Bean
+    public FilterRegistrationBean<ReadYourWritesFilter> readYourWritesFilter(
+            @Value("${shop.datasource.replica.read-your-writes-window:5s}") Duration window
+    ) {
+        FilterRegistrationBean<ReadYourWritesFilter> registration = new FilterRegistrationBean<>(
+                new ReadYourWritesFilter(window)
+        );
+        registration.addUrlPatterns("/api/*");
+        return registration;
+    }
+}
@@ -0,0 +1,158 @@
+package fr.fullstack.shopapp.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.datasource.AbstractDataSource;
+
+import javax.sql.DataSource;
+import java.io.Closeable;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Connections of the read-only transactions (see {@link ReadReplicaConfig}).
+ * <p>
+ * A connection comes from a replica pool only when asked by a read-only method of the services
+ * ({@link #allowReplica}) and when the current request does not need the primary
+ * ({@link #requirePrimary}: writes, reads in the read-your-writes window of the client, and the
+ * listing pages to cache).
+ * Otherwise, or when no replica answers, it comes from the primary.
+ */
+public class ReadReplicaDataSource extends AbstractDataSource implements Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(ReadReplicaDataSource.class);
+
+    private static final ThreadLocal<Boolean> PRIMARY_REQUIRED = new ThreadLocal<>();
+
+    private static final ThreadLocal<Boolean> REPLICA_ALLOWED = new ThreadLocal<>();
+
+    public enum Selection {
+        ROUND_ROBIN, LEAST_CONNECTIONS
+    }
+
+    private final Counter fallbackReads;
+    private final AtomicInteger next = new AtomicInteger();
+    private final DataSource primary;
+    private final Counter primaryReads;
+    private final Counter primaryRequiredReads;
+    private final List<Counter> replicaReads;
+    private final List<HikariDataSource> replicas;
+    private final Selection selection;
+
+    public ReadReplicaDataSource(
+            DataSource primary, List<HikariDataSource> replicas, Selection selection, MeterRegistry meterRegistry
+    ) {
+        this.primary = primary;
+        this.replicas = replicas;
+        this.selection = selection;
+        this.replicaReads = replicas.stream()
+                .map(replica -> readCounter(meterRegistry, replica.getPoolName(), "replica"))
+                .toList();
+        this.primaryReads = readCounter(meterRegistry, "primary", "primary");
+        this.primaryRequiredReads = readCounter(meterRegistry, "primary", "primary-required");
+        this.fallbackReads = readCounter(meterRegistry, "primary", "fallback");
+    }
+
+    /**
+     * Let the read-only transactions started by the current thread use a replica.
+     *
+     * @return the previous value, to restore
+     */
+    public static Boolean allowReplica(Boolean allowed) {
+        Boolean previous = REPLICA_ALLOWED.get();
+        set(REPLICA_ALLOWED, allowed);
+        return previous;
+    }
+
+    /**
+     * Send all the transactions of the current thread to the primary, whatever asked by the
+     * services.
+     *
+     * @return the previous value, to restore
+     */
+    public static Boolean requirePrimary(Boolean required) {
+        Boolean previous = PRIMARY_REQUIRED.get();
+        set(PRIMARY_REQUIRED, required);
+        return previous;
+    }
+
+    @Override
+    public void close() {
+        replicas.forEach(HikariDataSource::close);
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        if (!Boolean.TRUE.equals(REPLICA_ALLOWED.get())) {
+            primaryReads.increment();
+            return primary.getConnection();
+        }
+        if (Boolean.TRUE.equals(PRIMARY_REQUIRED.get())) {
+            primaryRequiredReads.increment();
+            return primary.getConnection();
+        }
+
+        int first = select();
+        for (int i = 0; i < replicas.size(); i++) {
+            int index = (first + i) % replicas.size();
+            try {
+                Connection connection = replicas.get(index).getConnection();
+                replicaReads.get(index).increment();
+                return connection;
+            } catch (SQLException e) {
+                log.warn("Replica {} unavailable: {}", replicas.get(index).getPoolName(), e.getMessage());
+            }
+        }
+        fallbackReads.increment();
+        return primary.getConnection();
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        // The replica pools use the credentials of their configuration
+        return primary.getConnection(username, password);
+    }
+
+    private int select() {
+        int start = Math.floorMod(next.getAndIncrement(), replicas.size());
+        if (selection == Selection.ROUND_ROBIN) {
+            return start;
+        }
+
+        // Ties are broken by the round-robin position
+        int selected = start;
+        int fewest = Integer.MAX_VALUE;
+        for (int i = 0; i < replicas.size(); i++) {
+            int index = (start + i) % replicas.size();
+            HikariPoolMXBean pool = replicas.get(index).getHikariPoolMXBean();
+            int active = pool == null ? 0 : pool.getActiveConnections();
+            if (active < fewest) {
+                fewest = active;
+                selected = index;
+            }
+        }
+        return selected;
+    }
+
+    private static Counter readCounter(MeterRegistry meterRegistry, String pool, String route) {
+        return Counter.builder("shop.datasource.read-only.connections")
+                .description("Connections given to read-only transactions, by pool and by reason")
+                .tag("pool", pool)
+                .tag("route", route)
+                .register(meterRegistry);
+    }
+
+    private static void set(ThreadLocal<Boolean> flag, Boolean value) {
+        if (value == null) {
+            flag.remove();
+        } else {
+            flag.set(value);
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package fr.fullstack.shopapp.config;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.Cookie;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpMethod;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Set;
+
+/**
+ * Sends to the primary the requests that write, and the reads of a client during
+ * {@code window} after its last write, so that it reads its own writes whatever the replication
+ * lag. The end of the window is kept by the client in a cookie: any instance of the application
+ * honours it.
+ * <p>
+ * With open-in-view, a request keeps the connection of its first query until it ends: a write
+ * request must not start on a replica.
+ */
+public class ReadYourWritesFilter extends OncePerRequestFilter {
+
+    static final String COOKIE = "shop-primary-until";
+
+    private static final Set<String> SAFE_METHODS = Set.of(
+            HttpMethod.GET.name(), HttpMethod.HEAD.name(), HttpMethod.OPTIONS.name()
+    );
+
+    private final Duration window;
+
+    public ReadYourWritesFilter(Duration window) {
+        this.window = window;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        boolean write = !SAFE_METHODS.contains(request.getMethod());
+        if (write) {
+            // Set before the response is committed, a failed write only costs reads on the primary
+            long until = System.currentTimeMillis() + window.toMillis();
+            Cookie cookie = new Cookie(COOKIE, String.valueOf(until));
+            cookie.setPath("/");
+            cookie.setHttpOnly(true);
+            cookie.setMaxAge((int) Math.max(1, window.toSeconds()));
+            response.addCookie(cookie);
+        }
+
+        // Only ever sends to the primary: an enclosing filter may already require it
+        if (!write && !inWindow(request)) {
+            chain.doFilter(request, response);
+            return;
+        }
+        Boolean previous = ReadReplicaDataSource.requirePrimary(true);
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            ReadReplicaDataSource.requirePrimary(previous);
+        }
+    }
+
+    private static boolean inWindow(HttpServletRequest request) {
+        if (request.getCookies() == null) {
+            return false;
+        }
+        for (Cookie cookie : request.getCookies()) {
+            if (COOKIE.equals(cookie.getName())) {
+                try {
+                    return System.currentTimeMillis() < Long.parseLong(cookie.getValue());
+                } catch (NumberFormatException e) {
+                    return false;
+                }
+            }
+        }
+        return false;
+    }
+}
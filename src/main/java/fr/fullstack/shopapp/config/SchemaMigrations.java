@@ -0,0 +1,160 @@
+package fr.fullstack.shopapp.config;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.persistence.EntityManagerFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Parts of sql/create_tables.sql that {@code ddl-auto=update} does not create, applied at startup
+ * on PostgreSQL once Hibernate has updated the tables, the indexes in the background once the
+ * application is ready. Every statement is idempotent.
+ */
+@Component
+public class SchemaMigrations {
+
+    private static final Logger log = LoggerFactory.getLogger(SchemaMigrations.class);
+
+    // Created by db/updated-at-triggers.sql
+    private static final List<String> UPDATED_AT_TRIGGERS = List.of(
+            "shops_touch",
+            "products_touch_shops_insert",
+            "products_touch_shops_update",
+            "products_touch_shops_delete",
+            "shops_opening_hours_touch_shops_insert",
+            "shops_opening_hours_touch_shops_delete",
+            "products_categories_touch_shops_insert",
+            "products_categories_touch_shops_delete",
+            "products_localized_product_touch_shops_insert",
+            "products_localized_product_touch_shops_delete",
+            "localized_product_touch_shops_update",
+            "opening_hours_touch_shops_update"
+    );
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "schema-indexes");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final JdbcTemplate jdbcTemplate;
+    private volatile boolean postgres;
+    private volatile boolean updatedAtTriggers;
+
+    // The tables are created or updated with the entity manager factory
+    public SchemaMigrations(DataSource dataSource, EntityManagerFactory entityManagerFactory) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+    }
+
+    /**
+     * Whether the triggers maintaining shops.updated_at are installed, without which the
+     * incremental reindex would find no change.
+     */
+    public boolean hasUpdatedAtTriggers() {
+        return updatedAtTriggers;
+    }
+
+    @PostConstruct
+    public void migrate() {
+        String database = jdbcTemplate.execute(
+                (ConnectionCallback<String>) connection -> connection.getMetaData().getDatabaseProductName());
+        postgres = "PostgreSQL".equals(database);
+        if (!postgres) {
+            return;
+        }
+
+        try {
+            jdbcTemplate.execute("create extension if not exists pg_trgm");
+        } catch (DataAccessException e) {
+            log.warn("Extension pg_trgm not created: {}", e.getMessage());
+        }
+
+        try {
+            // Recreated only when one is missing: replacing a trigger locks its table
+            if (!missingUpdatedAtTriggers().isEmpty()) {
+                jdbcTemplate.execute(updatedAtTriggersScript());
+                log.info("Triggers of shops.updated_at installed");
+            }
+        } catch (DataAccessException e) {
+            log.warn("Triggers of shops.updated_at not installed: {}", e.getMessage());
+        }
+
+        Set<String> missing = missingUpdatedAtTriggers();
+        updatedAtTriggers = missing.isEmpty();
+        if (!updatedAtTriggers) {
+            log.warn("Triggers of shops.updated_at missing: {}", missing);
+        }
+    }
+
+    /**
+     * Build the indexes once the application is started, on a background thread: concurrently
+     * built, they keep the shops writable, but a first build on a large table takes minutes.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void buildIndexes() {
+        if (!postgres) {
+            return;
+        }
+        executor.execute(() -> {
+            // "Contains" search on the name (ShopSpecifications.nameContains), which scans the
+            // shops until it is built
+            createIndex("idx_shops_name_trgm", "on shops using gin (lower(name) gin_trgm_ops)");
+            // Incremental reindex (ShopIncrementalIndexer)
+            createIndex("idx_shops_updated_at", "on shops (updated_at, id)");
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private void createIndex(String name, String definition) {
+        try {
+            // A concurrent build that failed or was interrupted leaves an invalid index, never used
+            // by the planner but still maintained on every write, which "if not exists" would keep
+            List<Boolean> valid = jdbcTemplate.queryForList(
+                    "select indisvalid from pg_index where indexrelid = to_regclass(cast(? as text))",
+                    Boolean.class, name);
+            if (valid.contains(Boolean.FALSE)) {
+                log.warn("Index {} is invalid, rebuilding it", name);
+                jdbcTemplate.execute("drop index concurrently if exists " + name);
+            }
+            jdbcTemplate.execute("create index concurrently if not exists " + name + " " + definition);
+        } catch (DataAccessException e) {
+            log.warn("Index {} not created: {}", name, e.getMessage());
+        }
+    }
+
+    private Set<String> missingUpdatedAtTriggers() {
+        Set<String> missing = new HashSet<>(UPDATED_AT_TRIGGERS);
+        jdbcTemplate.queryForList("select tgname::text from pg_trigger where not tgisinternal", String.class)
+                .forEach(missing::remove);
+        return missing;
+    }
+
+    private static String updatedAtTriggersScript() {
+        try {
+            return new ClassPathResource("db/updated-at-triggers.sql").getContentAsString(StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package fr.fullstack.shopapp.config;
+
+import fr.fullstack.shopapp.model.SyncStatus;
+import fr.fullstack.shopapp.repository.jpa.ShopRepository;
+import fr.fullstack.shopapp.service.IndexExisitngShops;
+import fr.fullstack.shopapp.service.ShopReindexService;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+
+/**
+ * /actuator/shopindex: progress of the indexing of the shops started with the application. A POST
+ * starts it again after a failure, from the last saved shop.
+ */
+@Component
+@Endpoint(id = "shopindex")
+public class ShopIndexEndpoint {
+
+    private final IndexExisitngShops indexExisitngShops;
+    private final ShopReindexService shopReindexService;
+    private final ShopRepository shopRepository;
+
+    public ShopIndexEndpoint(
+            IndexExisitngShops indexExisitngShops,
+            ShopReindexService shopReindexService,
+            ShopRepository shopRepository
+    ) {
+        this.indexExisitngShops = indexExisitngShops;
+        this.shopReindexService = shopReindexService;
+        this.shopRepository = shopRepository;
+    }
+
+    @ReadOperation
+    public Progress progress() {
+        SyncStatus status = shopReindexService.getStatus();
+        return new Progress(
+                indexExisitngShops.getState(),
+                status.getIndexName(),
+                status.getIndexedCount(),
+                status.getFailedCount(),
+                status.getLastShopId(),
+                shopRepository.count(),
+                indexExisitngShops.getStartedAt(),
+                indexExisitngShops.getFinishedAt(),
+                indexExisitngShops.getError()
+        );
+    }
+
+    @WriteOperation
+    public Progress start() {
+        indexExisitngShops.start();
+        return progress();
+    }
+
+    public record Progress(
+            IndexExisitngShops.State state,
+            String indexName,
+            long indexedCount,
+            long failedCount,
+            long lastShopId,
+            long totalShops,
+            Instant startedAt,
+            Instant finishedAt,
+            String error
+    ) {
+    }
+}
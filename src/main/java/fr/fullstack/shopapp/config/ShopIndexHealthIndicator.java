@@ -0,0 +1,39 @@
+package fr.fullstack.shopapp.config;
+
+import fr.fullstack.shopapp.service.IndexExisitngShops;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.boot.actuate.health.Status;
+import org.springframework.stereotype.Component;
+
+/**
+ * "shopIndex" health: up once the search index is built. It belongs to the search health group,
+ * not to the readiness probe, so that a node being indexed still serves the other endpoints.
+ * <p>
+ * While the index is built or after it failed, the status is {@link #INDEXING} or
+ * {@link #INDEX_FAILED}: absent from the default status order, they are left out of
+ * /actuator/health. Only the search group orders them and maps them to 503.
+ */
+@Component
+public class ShopIndexHealthIndicator implements HealthIndicator {
+
+    public static final Status INDEXING = new Status("INDEXING");
+
+    public static final Status INDEX_FAILED = new Status("INDEX_FAILED");
+
+    private final IndexExisitngShops indexExisitngShops;
+
+    public ShopIndexHealthIndicator(IndexExisitngShops indexExisitngShops) {
+        this.indexExisitngShops = indexExisitngShops;
+    }
+
+    @Override
+    public Health health() {
+        Health.Builder health = switch (indexExisitngShops.getState()) {
+            case COMPLETED -> Health.up();
+            case FAILED -> Health.status(INDEX_FAILED).withDetail("error", String.valueOf(indexExisitngShops.getError()));
+            case PENDING, RUNNING -> Health.status(INDEXING);
+        };
+        return health.withDetail("state", indexExisitngShops.getState()).build();
+    }
+}
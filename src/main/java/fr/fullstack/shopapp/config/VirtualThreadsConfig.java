@@ -0,0 +1,54 @@
+package fr.fullstack.shopapp.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnThreading;
+import org.springframework.boot.autoconfigure.thread.Threading;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.sql.DataSource;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Safeguards of the virtual threads mode ({@code spring.threads.virtual.enabled=true}, see the
+ * virtual-threads profile): requests, repositories and Elasticsearch calls then run on virtual
+ * threads.
+ */
+@Configuration
+@ConditionalOnThreading(Threading.VIRTUAL)
+public class VirtualThreadsConfig {
+
+    @Bean
+    public FilterRegistrationBean<ConnectionPoolConcurrencyLimit> connectionPoolConcurrencyLimit(
+            DataSource dataSource,
+            MeterRegistry meterRegistry,
+            @Value("${shop.virtual-threads.max-concurrent-requests:0}") int maxConcurrentRequests,
+            @Value("${shop.virtual-threads.acquire-timeout:1s}") Duration acquireTimeout,
+            @Value("${shop.datasource.replica.urls:}") List<String> replicaUrls
+    ) throws SQLException {
+        // Defaults to the size of the pools: with open-in-view, a request keeps its connection until
+        // it ends. The replica pools have the size of the primary one (ReadReplicaConfig); the
+        // writes beyond the primary pool wait for a connection up to its connectionTimeout
+        int limit = maxConcurrentRequests > 0
+                ? maxConcurrentRequests
+                : dataSource.unwrap(HikariDataSource.class).getMaximumPoolSize() * (1 + replicaUrls.size());
+        FilterRegistrationBean<ConnectionPoolConcurrencyLimit> registration = new FilterRegistrationBean<>(
+                new ConnectionPoolConcurrencyLimit(limit, acquireTimeout, meterRegistry)
+        );
+        registration.addUrlPatterns("/api/*");
+        return registration;
+    }
+
+    @Bean
+    public VirtualThreadPinningMonitor virtualThreadPinningMonitor(
+            MeterRegistry meterRegistry,
+            @Value("${shop.virtual-threads.pinned-threshold:20ms}") Duration threshold
+    ) {
+        return new VirtualThreadPinningMonitor(threshold, meterRegistry);
+    }
+}
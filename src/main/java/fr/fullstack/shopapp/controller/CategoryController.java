@@ -2,8 +2,10 @@ package fr.fullstack.shopapp.controller;
 
 import fr.fullstack.shopapp.model.Category;
 import fr.fullstack.shopapp.service.CategoryService;
+import fr.fullstack.shopapp.util.ETags;
 import fr.fullstack.shopapp.util.ErrorValidation;
 import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.media.Content;
 import io.swagger.v3.oas.annotations.media.Schema;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
@@ -13,19 +15,27 @@ import org.springdoc.core.annotations.ParameterObject;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.validation.Errors;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 
 import jakarta.validation.Valid;
 import org.springframework.web.server.ResponseStatusException;
 
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
 @RestController
 @RequestMapping("/api/v1/categories")
 @Tag(name = "Category Management", description = "APIs for managing categories")
 public class CategoryController {
 
+    private static final int MAX_BULK_DELETE_SIZE = 1000;
+
     @Autowired
     private CategoryService service;
 
@@ -46,6 +56,21 @@ public class CategoryController {
         return ResponseEntity.ok(service.createCategory(category));
     }
 
+    @Operation(summary = "Delete categories by their ids", description = "Delete several categories at once, unknown ids are ignored")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "204", description = "Categories deleted successfully"),
+            @ApiResponse(responseCode = "400", description = "No id or more than " + MAX_BULK_DELETE_SIZE + " ids supplied")
+    })
+    @DeleteMapping
+    public HttpStatus deleteCategories(@Parameter(description = "Ids of the categories") @RequestParam List<Long> ids) {
+        if (ids.isEmpty() || ids.size() > MAX_BULK_DELETE_SIZE) {
+            throw new ResponseStatusException(
+                    HttpStatus.BAD_REQUEST, "Between 1 and " + MAX_BULK_DELETE_SIZE + " ids must be supplied");
+        }
+        service.deleteCategories(Set.copyOf(ids));
+        return HttpStatus.NO_CONTENT;
+    }
+
     @Operation(summary = "Delete a category by its id", description = "Delete a specific category")
     @ApiResponses(value = {
             @ApiResponse(responseCode = "204", description = "Category deleted successfully"),
@@ -66,7 +91,11 @@ public class CategoryController {
     @GetMapping
     public ResponseEntity<Page<Category>> getAllCategories(
             @ParameterObject Pageable pageable) {
-        return ResponseEntity.ok(service.getCategoryList(pageable));
+        Page<Category> categories = service.getCategoryList(pageable);
+        return ResponseEntity.ok()
+                .eTag(ETags.ofPage(categories.getContent(), ETags::of,
+                        categories.getNumber() + "/" + categories.getSize() + "/" + categories.getTotalElements()))
+                .body(categories);
     }
 
     @Operation(summary = "Get a category by id", description = "Retrieve a specific category by its id")
@@ -74,11 +103,19 @@ public class CategoryController {
             @ApiResponse(responseCode = "200", description = "Category found",
                     content = {@Content(mediaType = "application/json",
                             schema = @Schema(implementation = Category.class))}),
+            @ApiResponse(responseCode = "304", description = "Category not modified since the version in If-None-Match"),
             @ApiResponse(responseCode = "404", description = "Category not found")
     })
     @GetMapping("/{id}")
-    public ResponseEntity<Category> getCategoryById(@PathVariable long id) throws Exception {
-        return ResponseEntity.ok().body(service.getCategoryById(id));
+    public ResponseEntity<Category> getCategoryById(@PathVariable long id, WebRequest request) throws Exception {
+        if (request.getHeader(HttpHeaders.IF_NONE_MATCH) != null) {
+            Optional<String> eTag = service.getCategoryETag(id);
+            if (eTag.isPresent() && request.checkNotModified(eTag.get())) {
+                return null;
+            }
+        }
+        Category category = service.getCategoryById(id);
+        return ResponseEntity.ok().eTag(ETags.of(category)).body(category);
     }
 
     @Operation(summary = "Update a category", description = "Update an existing category")
@@ -1,7 +1,16 @@
 package fr.fullstack.shopapp.controller;
 
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import fr.fullstack.shopapp.dto.BulkItemResult;
+import fr.fullstack.shopapp.dto.CursorPage;
+import fr.fullstack.shopapp.dto.LocalizedProductView;
+import fr.fullstack.shopapp.model.Locale;
 import fr.fullstack.shopapp.model.Product;
+import fr.fullstack.shopapp.service.ProductExportService;
 import fr.fullstack.shopapp.service.ProductService;
+import fr.fullstack.shopapp.util.Cursor;
+import fr.fullstack.shopapp.util.ETags;
 import fr.fullstack.shopapp.util.ErrorValidation;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
@@ -14,14 +23,22 @@ import org.springdoc.core.annotations.ParameterObject;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.validation.Errors;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import jakarta.validation.Valid;
 import org.springframework.web.server.ResponseStatusException;
 
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
 import java.util.Optional;
 
 @RestController
@@ -29,6 +46,14 @@ import java.util.Optional;
 @Tag(name = "Product Management", description = "APIs for managing products")
 public class ProductController {
 
+    private static final int MAX_CURSOR_PAGE_SIZE = 1000;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private ProductExportService exportService;
+
     @Autowired
     private ProductService service;
 
@@ -49,6 +74,19 @@ public class ProductController {
         return ResponseEntity.ok(service.createProduct(product));
     }
 
+    @Operation(summary = "Create products in bulk",
+            description = "Create the products of a JSON array or of a NDJSON stream, and return the result of each one")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Products processed, see the result of each one")
+    })
+    @PostMapping(value = "/bulk", consumes = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE})
+    public ResponseEntity<List<BulkItemResult>> createProducts(HttpServletRequest request) throws Exception {
+        // Products are read one at a time, the whole feed is never held in memory
+        try (MappingIterator<Product> products = objectMapper.readerFor(Product.class).readValues(request.getInputStream())) {
+            return ResponseEntity.ok(service.createProducts(products));
+        }
+    }
+
     @Operation(summary = "Delete a product by its id", description = "Delete a specific product")
     @DeleteMapping("/{id}")
     public HttpStatus deleteProduct(@PathVariable long id) throws Exception {
@@ -56,19 +94,107 @@ public class ProductController {
         return HttpStatus.NO_CONTENT;
     }
 
+    @Operation(summary = "Export the catalog of a shop",
+            description = "Stream all the products of a shop, with their localized names and category ids, as NDJSON or CSV")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Catalog streamed"),
+            @ApiResponse(responseCode = "400", description = "Unknown format"),
+            @ApiResponse(responseCode = "404", description = "Shop not found")
+    })
+    @GetMapping("/export")
+    public void exportProductsOfShop(
+            @Parameter(description = "Id of the shop") @RequestParam long shopId,
+            @Parameter(description = "ndjson or csv") @RequestParam(defaultValue = "ndjson") String format,
+            HttpServletResponse response) throws IOException {
+        ProductExportService.Format exportFormat = switch (format.toLowerCase()) {
+            case "ndjson" -> ProductExportService.Format.NDJSON;
+            case "csv" -> ProductExportService.Format.CSV;
+            default -> throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Format must be ndjson or csv");
+        };
+        exportService.checkShopExists(shopId);
+
+        // Written on the request thread rather than as an async StreamingResponseBody: the async
+        // request timeout would cut a large catalog once the 200 is already sent
+        boolean csv = exportFormat == ProductExportService.Format.CSV;
+        response.setContentType(csv ? new MediaType("text", "csv", StandardCharsets.UTF_8).toString()
+                : MediaType.APPLICATION_NDJSON_VALUE);
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION,
+                "attachment; filename=\"shop-" + shopId + "-products." + (csv ? "csv" : "ndjson") + "\"");
+        exportService.export(shopId, exportFormat, response.getOutputStream());
+    }
+
     @Operation(summary = "Get a product by id", description = "Retrieve a specific product by its id")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Product found"),
+            @ApiResponse(responseCode = "304", description = "Product not modified since the version in If-None-Match"),
+            @ApiResponse(responseCode = "404", description = "Product not found")
+    })
     @GetMapping("/{id}")
-    public ResponseEntity<Product> getProductById(@PathVariable long id) throws Exception {
-        return ResponseEntity.ok().body(service.getProductById(id));
+    public ResponseEntity<?> getProductById(
+            @PathVariable long id,
+            @Parameter(description = "Only return the name and description in this locale (FR or EN)")
+            @RequestParam Optional<String> locale,
+            WebRequest request) throws Exception {
+        Optional<Locale> viewLocale = resolveLocale(locale);
+        // Revalidation only reads the versions of the product, of its shop and of its categories
+        if (request.getHeader(HttpHeaders.IF_NONE_MATCH) != null) {
+            Optional<String> eTag = viewLocale.isPresent()
+                    ? service.getProductViewETag(id, viewLocale.get())
+                    : service.getProductETag(id);
+            if (eTag.isPresent() && request.checkNotModified(eTag.get())) {
+                return null;
+            }
+        }
+
+        if (viewLocale.isPresent()) {
+            LocalizedProductView product = service.getProductView(id, viewLocale.get());
+            return ResponseEntity.ok()
+                    .eTag(ETags.productView(id, product.getVersion(), viewLocale.get()))
+                    .body(product);
+        }
+        Product product = service.getProductById(id);
+        return ResponseEntity.ok().eTag(ETags.of(product)).body(product);
     }
 
     @Operation(summary = "Get products", description = "Retrieve paginated products, optionally filtered by shop or category")
     @GetMapping
-    public ResponseEntity<Page<Product>> getProductsOfShop(
+    public ResponseEntity<? extends Page<?>> getProductsOfShop(
             @ParameterObject Pageable pageable,
             @Parameter(description = "Id of the shop") @RequestParam Optional<Long> shopId,
+            @Parameter(description = "Id of the category") @RequestParam Optional<Long> categoryId,
+            @Parameter(description = "Only return the names and descriptions in this locale (FR or EN)")
+            @RequestParam Optional<String> locale) {
+        Optional<Locale> viewLocale = resolveLocale(locale);
+        if (viewLocale.isPresent()) {
+            Page<LocalizedProductView> products = service.getShopProductViewList(
+                    shopId, categoryId, viewLocale.get(), pageable);
+            return ResponseEntity.ok()
+                    .eTag(ETags.ofPage(products.getContent(),
+                            product -> ETags.productView(product.getId(), product.getVersion(), viewLocale.get()),
+                            pageBounds(products)))
+                    .body(products);
+        }
+
+        Page<Product> products = service.getShopProductList(shopId, categoryId, pageable);
+        return ResponseEntity.ok()
+                .eTag(ETags.ofPage(products.getContent(), ETags::of, pageBounds(products)))
+                .body(products);
+    }
+
+    @Operation(summary = "Get products by cursor",
+            description = "Retrieve products ordered by id after a cursor, optionally filtered by shop or category, without counting them")
+    @GetMapping("/cursor")
+    public ResponseEntity<CursorPage<Product>> getProductsOfShopByCursor(
+            @Parameter(description = "Cursor returned as next by the previous page") @RequestParam Optional<String> cursor,
+            @Parameter(description = "Number of products per page") @RequestParam(defaultValue = "20") int size,
+            @Parameter(description = "Id of the shop") @RequestParam Optional<Long> shopId,
             @Parameter(description = "Id of the category") @RequestParam Optional<Long> categoryId) {
-        return ResponseEntity.ok(service.getShopProductList(shopId, categoryId, pageable));
+        CursorPage<Product> products = service.getShopProductListAfter(
+                shopId, categoryId, cursor.map(Cursor::decode), Math.max(1, Math.min(size, MAX_CURSOR_PAGE_SIZE))
+        );
+        return ResponseEntity.ok()
+                .eTag(ETags.ofPage(products.getContent(), ETags::of, String.valueOf(products.getNext())))
+                .body(products);
     }
 
     @Operation(summary = "Update a product", description = "Update an existing product")
@@ -81,4 +207,21 @@ public class ProductController {
 
         return ResponseEntity.ok().body(service.updateProduct(product));
     }
+
+    private static String pageBounds(Page<?> page) {
+        return page.getNumber() + "/" + page.getSize() + "/" + page.getTotalElements();
+    }
+
+    /**
+     * Locale of the single locale representation, only when asked explicitly: Accept-Language is
+     * sent by nearly every client, which expect the full product. Without it, the product comes in
+     * all its locales.
+     */
+    private static Optional<Locale> resolveLocale(Optional<String> locale) {
+        try {
+            return locale.map(l -> Locale.valueOf(l.toUpperCase(java.util.Locale.ROOT)));
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Locale must be FR or EN");
+        }
+    }
 }
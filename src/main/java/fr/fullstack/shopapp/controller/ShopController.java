@@ -1,7 +1,13 @@
 package fr.fullstack.shopapp.controller;
 
+import fr.fullstack.shopapp.dto.CursorPage;
+import fr.fullstack.shopapp.dto.ShopSearchHit;
 import fr.fullstack.shopapp.model.Shop;
+import fr.fullstack.shopapp.service.IndexExisitngShops;
+import fr.fullstack.shopapp.service.ShopSearchService;
 import fr.fullstack.shopapp.service.ShopService;
+import fr.fullstack.shopapp.util.Cursor;
+import fr.fullstack.shopapp.util.ETags;
 import fr.fullstack.shopapp.util.ErrorValidation;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
@@ -14,21 +20,35 @@ import org.springdoc.core.annotations.ParameterObject;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.validation.Errors;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 
 import jakarta.validation.Valid;
 import org.springframework.web.server.ResponseStatusException;
 
+import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 
 @RestController
 @RequestMapping("/api/v1/shops")
 @Tag(name = "Shop Management", description = "APIs for managing shops")
 public class ShopController {
 
+    private static final int MAX_BULK_DELETE_SIZE = 1000;
+
+    private static final int MAX_CURSOR_PAGE_SIZE = 1000;
+
+    @Autowired
+    private IndexExisitngShops indexExisitngShops;
+
+    @Autowired
+    private ShopSearchService searchService;
+
     @Autowired
     private ShopService service;
 
@@ -49,6 +69,21 @@ public class ShopController {
         return ResponseEntity.ok(service.createShop(shop));
     }
 
+    @Operation(summary = "Delete shops by their ids", description = "Delete several shops at once, unknown ids are ignored")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "204", description = "Shops deleted successfully"),
+            @ApiResponse(responseCode = "400", description = "No id or more than " + MAX_BULK_DELETE_SIZE + " ids supplied")
+    })
+    @DeleteMapping
+    public HttpStatus deleteShops(@Parameter(description = "Ids of the shops") @RequestParam List<Long> ids) {
+        if (ids.isEmpty() || ids.size() > MAX_BULK_DELETE_SIZE) {
+            throw new ResponseStatusException(
+                    HttpStatus.BAD_REQUEST, "Between 1 and " + MAX_BULK_DELETE_SIZE + " ids must be supplied");
+        }
+        service.deleteShops(Set.copyOf(ids));
+        return HttpStatus.NO_CONTENT;
+    }
+
     @Operation(summary = "Delete a shop by its id", description = "Delete a specific shop")
     @ApiResponses(value = {
             @ApiResponse(responseCode = "204", description = "Shop deleted successfully"),
@@ -64,20 +99,72 @@ public class ShopController {
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", description = "Shops retrieved successfully",
                     content = {@Content(mediaType = "application/json",
-                            schema = @Schema(implementation = Page.class))})
+                            schema = @Schema(implementation = Page.class))}),
+            @ApiResponse(responseCode = "503", description = "Opening hours index being built (openAt)")
     })
     @GetMapping
     public ResponseEntity<Page<Shop>> getAllShops(
             @ParameterObject Pageable pageable,
             @Parameter(description = "Plain text search on name of the shop") @RequestParam Optional<String> search,
-            @Parameter(description = "Sort shops by field (e.g., 'name', 'nbProducts', 'createdAt')") @RequestParam Optional<String> sortBy,
+            @Parameter(description = "Sort shops by field (e.g., 'name', 'nbProducts', 'nbCategories', 'createdAt')") @RequestParam Optional<String> sortBy,
             @Parameter(description = "Filter shops based on vacation status") @RequestParam Optional<Boolean> inVacations,
             @Parameter(description = "Filter shops created after this date (YYYY-MM-DD)") @RequestParam Optional<String> createdAfter,
-            @Parameter(description = "Filter shops created before this date (YYYY-MM-DD)") @RequestParam Optional<String> createdBefore) {
+            @Parameter(description = "Filter shops created before this date (YYYY-MM-DD)") @RequestParam Optional<String> createdBefore,
+            @Parameter(description = "Only shops open at this time: 'now' or day (1 = monday) and time, e.g. '1-09:30'. "
+                    + "Cannot be combined with the other filters") @RequestParam Optional<String> openAt) {
+
+        if (openAt.isPresent()) {
+            if (search.isPresent() || sortBy.isPresent() || inVacations.isPresent()
+                    || createdAfter.isPresent() || createdBefore.isPresent()) {
+                throw new ResponseStatusException(
+                        HttpStatus.BAD_REQUEST, "openAt cannot be combined with other filters or sorts");
+            }
+            return withETag(service.getOpenShopList(openAt.get(), pageable));
+        }
+
+        return withETag(service.getShopList(search, sortBy, inVacations, createdAfter, createdBefore, pageable));
+    }
 
-        return ResponseEntity.ok(
-                service.getShopList(search, sortBy, inVacations, createdAfter, createdBefore, pageable)
+    @Operation(summary = "Get shops by cursor",
+            description = "Retrieve sorted shops after a cursor, without counting them")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Shops retrieved successfully"),
+            @ApiResponse(responseCode = "400", description = "Invalid cursor")
+    })
+    @GetMapping("/cursor")
+    public ResponseEntity<CursorPage<Shop>> getAllShopsByCursor(
+            @Parameter(description = "Cursor returned as next by the previous page") @RequestParam Optional<String> cursor,
+            @Parameter(description = "Number of shops per page") @RequestParam(defaultValue = "20") int size,
+            @Parameter(description = "Sort shops by field (e.g., 'name', 'nbProducts', 'nbCategories', 'createdAt')") @RequestParam Optional<String> sortBy) {
+        CursorPage<Shop> shops = service.getShopListAfter(
+                sortBy, cursor.map(Cursor::decode), Math.max(1, Math.min(size, MAX_CURSOR_PAGE_SIZE))
         );
+        return ResponseEntity.ok()
+                .eTag(ETags.ofPage(shops.getContent(), ETags::of, String.valueOf(shops.getNext())))
+                .body(shops);
+    }
+
+    @Operation(summary = "Search shops",
+            description = "Full text search on the name of the shops and on the names and descriptions of their "
+                    + "products, by relevance, with the matching products highlighted")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Shops found"),
+            @ApiResponse(responseCode = "400", description = "Empty search"),
+            @ApiResponse(responseCode = "503", description = "Search index being built")
+    })
+    @GetMapping("/search")
+    public ResponseEntity<Page<ShopSearchHit>> searchShops(
+            @Parameter(description = "Words to search, in french or in english") @RequestParam String q,
+            @Parameter(description = "Also count the matching shops by category sold, vacation status, month of "
+                    + "creation and price range of their products") @RequestParam(defaultValue = "false") boolean facets,
+            @ParameterObject Pageable pageable) {
+        if (q.isBlank()) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Search may not be empty");
+        }
+        if (!indexExisitngShops.isReady()) {
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Search index is being built");
+        }
+        return ResponseEntity.ok(searchService.search(q, pageable, facets));
     }
 
     @Operation(summary = "Get a shop by id", description = "Retrieve a specific shop by its id")
@@ -85,11 +172,20 @@ public class ShopController {
             @ApiResponse(responseCode = "200", description = "Shop found",
                     content = {@Content(mediaType = "application/json",
                             schema = @Schema(implementation = Shop.class))}),
+            @ApiResponse(responseCode = "304", description = "Shop not modified since the version in If-None-Match"),
             @ApiResponse(responseCode = "404", description = "Shop not found")
     })
     @GetMapping("/{id}")
-    public ResponseEntity<Shop> getShopById(@PathVariable long id) throws Exception {
-        return ResponseEntity.ok().body(service.getShopById(id));
+    public ResponseEntity<Shop> getShopById(@PathVariable long id, WebRequest request) throws Exception {
+        // Revalidation only reads the version of the shop
+        if (request.getHeader(HttpHeaders.IF_NONE_MATCH) != null) {
+            Optional<String> eTag = service.getShopETag(id);
+            if (eTag.isPresent() && request.checkNotModified(eTag.get())) {
+                return null;
+            }
+        }
+        Shop shop = service.getShopById(id);
+        return ResponseEntity.ok().eTag(ETags.of(shop)).body(shop);
     }
 
     @Operation(summary = "Update a shop", description = "Update an existing shop")
@@ -108,4 +204,11 @@ public class ShopController {
 
         return ResponseEntity.ok().body(service.updateShop(shop));
     }
+
+    private static ResponseEntity<Page<Shop>> withETag(Page<Shop> shops) {
+        return ResponseEntity.ok()
+                .eTag(ETags.ofPage(shops.getContent(), ETags::of,
+                        shops.getNumber() + "/" + shops.getSize() + "/" + shops.getTotalElements()))
+                .body(shops);
+    }
 }
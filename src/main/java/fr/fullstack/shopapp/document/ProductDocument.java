@@ -0,0 +1,95 @@
+package fr.fullstack.shopapp.document;
+
+import fr.fullstack.shopapp.model.Locale;
+import fr.fullstack.shopapp.model.LocalizedProduct;
+import fr.fullstack.shopapp.model.Product;
+import org.springframework.data.elasticsearch.annotations.Field;
+import org.springframework.data.elasticsearch.annotations.FieldType;
+
+/**
+ * Product nested in a {@link ShopDocument}, with one field per locale so that each one is analyzed
+ * with the rules of its language.
+ */
+public class ProductDocument {
+    @Field(type = FieldType.Text, analyzer = "en_text")
+    private String descriptionEn;
+
+    @Field(type = FieldType.Text, analyzer = "fr_text")
+    private String descriptionFr;
+
+    @Field(type = FieldType.Long)
+    private long id;
+
+    @Field(type = FieldType.Text, analyzer = "en_text")
+    private String nameEn;
+
+    @Field(type = FieldType.Text, analyzer = "fr_text")
+    private String nameFr;
+
+    @Field(type = FieldType.Float)
+    private float price;
+
+    public static ProductDocument from(Product product) {
+        ProductDocument document = new ProductDocument();
+        document.id = product.getId();
+        document.price = product.getPrice();
+        for (LocalizedProduct localized : product.getLocalizedProducts()) {
+            if (Locale.FR.name().equals(localized.getLocale())) {
+                document.nameFr = localized.getName();
+                document.descriptionFr = localized.getDescription();
+            } else if (Locale.EN.name().equals(localized.getLocale())) {
+                document.nameEn = localized.getName();
+                document.descriptionEn = localized.getDescription();
+            }
+        }
+        return document;
+    }
+
+    public String getDescriptionEn() {
+        return descriptionEn;
+    }
+
+    public String getDescriptionFr() {
+        return descriptionFr;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public String getNameEn() {
+        return nameEn;
+    }
+
+    public String getNameFr() {
+        return nameFr;
+    }
+
+    public float getPrice() {
+        return price;
+    }
+
+    public void setDescriptionEn(String descriptionEn) {
+        this.descriptionEn = descriptionEn;
+    }
+
+    public void setDescriptionFr(String descriptionFr) {
+        this.descriptionFr = descriptionFr;
+    }
+
+    public void setId(long id) {
+        this.id = id;
+    }
+
+    public void setNameEn(String nameEn) {
+        this.nameEn = nameEn;
+    }
+
+    public void setNameFr(String nameFr) {
+        this.nameFr = nameFr;
+    }
+
+    public void setPrice(float price) {
+        this.price = price;
+    }
+}
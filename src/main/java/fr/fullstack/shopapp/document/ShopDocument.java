@@ -0,0 +1,175 @@
+package fr.fullstack.shopapp.document;
+
+import fr.fullstack.shopapp.model.Category;
+import fr.fullstack.shopapp.model.Product;
+import fr.fullstack.shopapp.model.Shop;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.elasticsearch.annotations.DateFormat;
+import org.springframework.data.elasticsearch.annotations.Document;
+import org.springframework.data.elasticsearch.annotations.Field;
+import org.springframework.data.elasticsearch.annotations.FieldType;
+import org.springframework.data.elasticsearch.annotations.InnerField;
+import org.springframework.data.elasticsearch.annotations.MultiField;
+import org.springframework.data.elasticsearch.annotations.Setting;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Shop as indexed for the search, with the localized names and descriptions of its products.
+ * The analyzers are declared in elasticsearch/shop-search-settings.json.
+ */
+@Document(indexName = "idx_shops_search")
+@Setting(settingPath = "/elasticsearch/shop-search-settings.json")
+public class ShopDocument {
+    // Categories of the products sold, for the facets
+    @Field(type = FieldType.Long)
+    private List<Long> categoryIds = new ArrayList<>();
+
+    @Field(type = FieldType.Date, format = DateFormat.date)
+    private LocalDate createdAt;
+
+    // Digest of the indexed fields computed by the database, compared by the reconciliation
+    @Field(type = FieldType.Keyword, index = false)
+    private String fingerprint;
+
+    @Id
+    private long id;
+
+    @Field(type = FieldType.Boolean)
+    private boolean inVacations;
+
+    // The shop name has no language: it is matched as is and with both stemmers
+    @MultiField(
+            mainField = @Field(type = FieldType.Text, analyzer = "name_text"),
+            otherFields = {
+                    @InnerField(suffix = "fr", type = FieldType.Text, analyzer = "fr_text"),
+                    @InnerField(suffix = "en", type = FieldType.Text, analyzer = "en_text")
+            }
+    )
+    private String name;
+
+    @Field(type = FieldType.Long)
+    private long nbCategories;
+
+    @Field(type = FieldType.Long)
+    private long nbProducts;
+
+    // Numeric copy of the id, which is mapped as a keyword, for the id ranges of the reconciliation
+    @Field(type = FieldType.Long)
+    private long shopId;
+
+    // At most index.mapping.nested_objects.limit of shop-search-settings.json, past which
+    // Elasticsearch rejects the whole document
+    @Field(type = FieldType.Nested)
+    private List<ProductDocument> products = new ArrayList<>();
+
+    /**
+     * @param maxProducts number of products nested in the document, the ones with the lowest ids;
+     *                    the categories are those of all the products
+     */
+    public static ShopDocument from(Shop shop, List<Product> products, int maxProducts) {
+        ShopDocument document = new ShopDocument();
+        document.id = shop.getId();
+        document.shopId = shop.getId();
+        document.name = shop.getName();
+        document.createdAt = shop.getCreatedAt();
+        document.inVacations = shop.getInVacations();
+        document.nbProducts = shop.getNbProducts();
+        document.nbCategories = shop.getNbCategories();
+        document.products = products.stream()
+                .sorted(Comparator.comparingLong(Product::getId))
+                .limit(maxProducts)
+                .map(ProductDocument::from)
+                .toList();
+        document.categoryIds = products.stream()
+                .flatMap(product -> product.getCategories().stream())
+                .map(Category::getId)
+                .distinct()
+                .sorted()
+                .toList();
+        return document;
+    }
+
+    public List<Long> getCategoryIds() {
+        return categoryIds;
+    }
+
+    public LocalDate getCreatedAt() {
+        return createdAt;
+    }
+
+    public String getFingerprint() {
+        return fingerprint;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public boolean getInVacations() {
+        return inVacations;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getNbCategories() {
+        return nbCategories;
+    }
+
+    public long getNbProducts() {
+        return nbProducts;
+    }
+
+    public List<ProductDocument> getProducts() {
+        return products;
+    }
+
+    public long getShopId() {
+        return shopId;
+    }
+
+    public void setCategoryIds(List<Long> categoryIds) {
+        this.categoryIds = categoryIds;
+    }
+
+    public void setCreatedAt(LocalDate createdAt) {
+        this.createdAt = createdAt;
+    }
+
+    public void setFingerprint(String fingerprint) {
+        this.fingerprint = fingerprint;
+    }
+
+    public void setId(long id) {
+        this.id = id;
+    }
+
+    public void setInVacations(boolean inVacations) {
+        this.inVacations = inVacations;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public void setNbCategories(long nbCategories) {
+        this.nbCategories = nbCategories;
+    }
+
+    public void setNbProducts(long nbProducts) {
+        this.nbProducts = nbProducts;
+    }
+
+    public void setProducts(List<ProductDocument> products) {
+        this.products = products;
+    }
+
+    public void setShopId(long shopId) {
+        this.shopId = shopId;
+    }
+}
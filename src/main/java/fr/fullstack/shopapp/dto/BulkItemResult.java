@@ -0,0 +1,53 @@
+package fr.fullstack.shopapp.dto;
+
+/**
+ * Outcome of one item of a bulk request, identified by its position in the request.
+ */
+public class BulkItemResult {
+    public enum Status {
+        CREATED, INVALID, FAILED
+    }
+
+    private final String error;
+
+    private final Long id;
+
+    private final int index;
+
+    private final Status status;
+
+    private BulkItemResult(int index, Status status, Long id, String error) {
+        this.index = index;
+        this.status = status;
+        this.id = id;
+        this.error = error;
+    }
+
+    public static BulkItemResult created(int index, long id) {
+        return new BulkItemResult(index, Status.CREATED, id, null);
+    }
+
+    public static BulkItemResult failed(int index, String error) {
+        return new BulkItemResult(index, Status.FAILED, null, error);
+    }
+
+    public static BulkItemResult invalid(int index, String error) {
+        return new BulkItemResult(index, Status.INVALID, null, error);
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+}
@@ -0,0 +1,45 @@
+package fr.fullstack.shopapp.dto;
+
+import fr.fullstack.shopapp.util.Cursor;
+
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Page of a keyset listing. {@code next} is the opaque cursor of the following page, null on the
+ * last page. No total is computed.
+ */
+public class CursorPage<T> {
+    private final List<T> content;
+
+    private final String next;
+
+    public CursorPage(List<T> content, String next) {
+        this.content = content;
+        this.next = next;
+    }
+
+    /**
+     * Build a page from rows fetched with a limit of {@code size + 1}: the extra row only tells
+     * that a next page exists.
+     */
+    public static <T> CursorPage<T> of(List<T> rows, int size, Function<T, Cursor> cursorOf) {
+        if (rows.size() <= size) {
+            return new CursorPage<>(rows, null);
+        }
+        List<T> content = rows.subList(0, size);
+        return new CursorPage<>(content, cursorOf.apply(content.get(size - 1)).encode());
+    }
+
+    public List<T> getContent() {
+        return content;
+    }
+
+    public String getNext() {
+        return next;
+    }
+
+    public int getSize() {
+        return content.size();
+    }
+}
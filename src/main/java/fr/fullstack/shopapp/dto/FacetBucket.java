@@ -0,0 +1,23 @@
+package fr.fullstack.shopapp.dto;
+
+/**
+ * Value of a facet and the number of matching shops having it.
+ */
+public class FacetBucket {
+    private final long count;
+
+    private final String key;
+
+    public FacetBucket(String key, long count) {
+        this.key = key;
+        this.count = count;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public String getKey() {
+        return key;
+    }
+}
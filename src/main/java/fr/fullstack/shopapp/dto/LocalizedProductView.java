@@ -0,0 +1,61 @@
+package fr.fullstack.shopapp.dto;
+
+/**
+ * Product in a single locale: the one asked by the client, or french when the product has no
+ * name in that locale. Its shop is only referenced and its categories are left out.
+ */
+public class LocalizedProductView {
+    private final String description;
+
+    private final long id;
+
+    private final String locale;
+
+    private final String name;
+
+    private final float price;
+
+    private final Long shopId;
+
+    private final long version;
+
+    public LocalizedProductView(
+            long id, float price, Long shopId, long version, String locale, String name, String description
+    ) {
+        this.id = id;
+        this.price = price;
+        this.shopId = shopId;
+        this.version = version;
+        this.locale = locale;
+        this.name = name;
+        this.description = description;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public String getLocale() {
+        return locale;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public float getPrice() {
+        return price;
+    }
+
+    public Long getShopId() {
+        return shopId;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+}
@@ -0,0 +1,27 @@
+package fr.fullstack.shopapp.dto;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Product of a shop matching a search, with the matching fragments of its localized fields
+ * (nameFr, nameEn, descriptionFr, descriptionEn).
+ */
+public class ProductSearchHit {
+    private final Map<String, List<String>> highlights;
+
+    private final long id;
+
+    public ProductSearchHit(long id, Map<String, List<String>> highlights) {
+        this.id = id;
+        this.highlights = highlights;
+    }
+
+    public Map<String, List<String>> getHighlights() {
+        return highlights;
+    }
+
+    public long getId() {
+        return id;
+    }
+}
@@ -0,0 +1,50 @@
+package fr.fullstack.shopapp.dto;
+
+import java.util.List;
+
+/**
+ * Facets of the shops matching a search, each bucket counting shops:
+ * <ul>
+ *     <li>categories: id of a category sold by the shop, most frequent first</li>
+ *     <li>inVacations: true or false</li>
+ *     <li>createdAt: month of creation (yyyy-MM), in ascending order</li>
+ *     <li>priceRanges: price range of at least one product of the shop ("10.0-20.0", "*-10.0"...)</li>
+ * </ul>
+ */
+public class ShopSearchFacets {
+    private final List<FacetBucket> categories;
+
+    private final List<FacetBucket> createdAt;
+
+    private final List<FacetBucket> inVacations;
+
+    private final List<FacetBucket> priceRanges;
+
+    public ShopSearchFacets(
+            List<FacetBucket> categories,
+            List<FacetBucket> inVacations,
+            List<FacetBucket> createdAt,
+            List<FacetBucket> priceRanges
+    ) {
+        this.categories = categories;
+        this.inVacations = inVacations;
+        this.createdAt = createdAt;
+        this.priceRanges = priceRanges;
+    }
+
+    public List<FacetBucket> getCategories() {
+        return categories;
+    }
+
+    public List<FacetBucket> getCreatedAt() {
+        return createdAt;
+    }
+
+    public List<FacetBucket> getInVacations() {
+        return inVacations;
+    }
+
+    public List<FacetBucket> getPriceRanges() {
+        return priceRanges;
+    }
+}
@@ -0,0 +1,73 @@
+package fr.fullstack.shopapp.dto;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * Shop matching a search, by decreasing score, with its highlighted name and its best matching
+ * products.
+ */
+public class ShopSearchHit {
+    @JsonFormat(pattern = "yyyy-MM-dd")
+    private final LocalDate createdAt;
+
+    private final List<String> highlightedName;
+
+    private final long id;
+
+    private final boolean inVacations;
+
+    private final String name;
+
+    private final List<ProductSearchHit> products;
+
+    private final float score;
+
+    public ShopSearchHit(
+            long id,
+            String name,
+            boolean inVacations,
+            LocalDate createdAt,
+            float score,
+            List<String> highlightedName,
+            List<ProductSearchHit> products
+    ) {
+        this.id = id;
+        this.name = name;
+        this.inVacations = inVacations;
+        this.createdAt = createdAt;
+        this.score = score;
+        this.highlightedName = highlightedName;
+        this.products = products;
+    }
+
+    public LocalDate getCreatedAt() {
+        return createdAt;
+    }
+
+    public List<String> getHighlightedName() {
+        return highlightedName;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public boolean getInVacations() {
+        return inVacations;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public List<ProductSearchHit> getProducts() {
+        return products;
+    }
+
+    public float getScore() {
+        return score;
+    }
+}
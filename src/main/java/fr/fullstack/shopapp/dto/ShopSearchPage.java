@@ -0,0 +1,24 @@
+package fr.fullstack.shopapp.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+
+import java.util.List;
+
+/**
+ * Page of search results, with the facets of all the matching shops when they were asked for.
+ */
+public class ShopSearchPage extends PageImpl<ShopSearchHit> {
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private final ShopSearchFacets facets;
+
+    public ShopSearchPage(List<ShopSearchHit> content, Pageable pageable, long total, ShopSearchFacets facets) {
+        super(content, pageable, total);
+        this.facets = facets;
+    }
+
+    public ShopSearchFacets getFacets() {
+        return facets;
+    }
+}
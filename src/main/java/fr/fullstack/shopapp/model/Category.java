@@ -2,6 +2,7 @@ package fr.fullstack.shopapp.model;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
 
+import jakarta.persistence.Cacheable;
 import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
 import jakarta.persistence.GeneratedValue;
@@ -11,11 +12,16 @@ import jakarta.persistence.ManyToMany;
 import jakarta.persistence.Table;
 import jakarta.validation.constraints.NotNull;
 import jakarta.validation.constraints.Size;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+
 import java.util.ArrayList;
 import java.util.List;
 
 @Entity
 @Table(name = "categories")
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "category")
 public class Category {
     @Id
     @GeneratedValue(strategy = GenerationType.AUTO)
@@ -30,6 +36,11 @@ public class Category {
     @JsonIgnore
     private List<Product> products = new ArrayList<Product>();
 
+    // Bumped by SQL on every change of the category, used as its ETag
+    @Column(nullable = false, insertable = false, updatable = false,
+            columnDefinition = "bigint not null default 0")
+    private long version;
+
     public long getId() {
         return id;
     }
@@ -42,6 +53,10 @@ public class Category {
         return products;
     }
 
+    public long getVersion() {
+        return version;
+    }
+
     public void setId(long id) {
         this.id = id;
     }
@@ -53,4 +68,8 @@ public class Category {
     public void setProducts(List<Product> products) {
         this.products = products;
     }
+
+    public void setVersion(long version) {
+        this.version = version;
+    }
 }
@@ -4,48 +4,69 @@ import com.fasterxml.jackson.annotation.JsonFormat;
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import jakarta.persistence.*;
 import org.hibernate.annotations.CreationTimestamp;
-import org.hibernate.annotations.Formula;
 
 import jakarta.validation.Valid;
 import jakarta.validation.constraints.NotNull;
 import jakarta.validation.constraints.Size;
-import org.springframework.data.elasticsearch.annotations.Document;
-import org.springframework.data.elasticsearch.annotations.Field;
-import org.springframework.data.elasticsearch.annotations.FieldType;
 
+import java.time.Instant;
 import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.List;
 
 @Entity
-@Table(name = "shops")
-@Document(indexName = "idx_shops")
+@Table(name = "shops", indexes = {
+        @Index(name = "idx_shops_name", columnList = "name, id"),
+        @Index(name = "idx_shops_created_at", columnList = "created_at, id"),
+        @Index(name = "idx_shops_nb_products", columnList = "nb_products DESC, id"),
+        @Index(name = "idx_shops_nb_categories", columnList = "nb_categories DESC, id"),
+        // Listing filtered on the vacation status, for each sort
+        @Index(name = "idx_shops_in_vacations_name", columnList = "in_vacations, name, id"),
+        @Index(name = "idx_shops_in_vacations_created_at", columnList = "in_vacations, created_at, id"),
+        @Index(name = "idx_shops_in_vacations_nb_products", columnList = "in_vacations, nb_products DESC, id"),
+        @Index(name = "idx_shops_in_vacations_nb_categories", columnList = "in_vacations, nb_categories DESC, id"),
+        @Index(name = "idx_shops_in_vacations_id", columnList = "in_vacations, id"),
+        // Incremental reindex
+        @Index(name = "idx_shops_updated_at", columnList = "updated_at, id")
+})
 public class Shop {
     @CreationTimestamp
     @Column(name = "created_at", nullable = false, updatable = false)
-    @Field(type = FieldType.Date)
     @JsonFormat(pattern = "yyyy-MM-dd")
     private LocalDate createdAt;
 
     @Id
     @GeneratedValue(strategy = GenerationType.AUTO)
-    @Field(type = FieldType.Long)
     private long id;
 
     @Column(nullable = false)
     @NotNull(message = "InVacations may not be null")
-    @Field(type = FieldType.Boolean)
     private boolean inVacations;
 
     @Column(nullable = false)
     @Size(min = 1, max = 255, message = "Name must be between 1 and 255 characters")
     @NotNull(message = "Name may not be null")
-    @Field(type = FieldType.Text)
     private String name;
 
-    @Formula(value = "(SELECT COUNT(*) FROM products p WHERE p.shop_id = id)")
-    private Long nbProducts;
+    // Maintained by ProductService and CategoryService, never written from the entity
+    @Column(name = "nb_products", nullable = false, insertable = false, updatable = false,
+            columnDefinition = "bigint not null default 0")
+    private long nbProducts;
 
+    // Bumped by SQL on every change of the shop, counters included, used as its ETag
+    @Column(nullable = false, insertable = false, updatable = false,
+            columnDefinition = "bigint not null default 0")
+    private long version;
+
+    // Set by triggers on every change of the shop, its products or its opening hours
+    // (db/updated-at-triggers.sql), including the changes made outside of the application
+    @Column(name = "updated_at", nullable = false, insertable = false, updatable = false,
+            columnDefinition = "timestamp(6) with time zone not null default now()")
+    @JsonIgnore
+    private Instant updatedAt;
+
+    // Not in the second-level cache: the ETag of the shop is its version, read from the database,
+    // and must not be served with opening hours cached before the last change
     @OneToMany(cascade = {CascadeType.ALL})
     private List<@Valid OpeningHoursShop> openingHours = new ArrayList<OpeningHoursShop>();
 
@@ -54,9 +75,9 @@ public class Shop {
     @Transient
     private List<Product> products = new ArrayList<Product>();
 
-    @Formula(value = "(SELECT COUNT(DISTINCT pc.category_id) FROM products_categories pc WHERE pc.product_id IN " +
-            "(SELECT p.id FROM products p WHERE p.shop_id = id))")
-    private Long nbCategories;
+    @Column(name = "nb_categories", nullable = false, insertable = false, updatable = false,
+            columnDefinition = "bigint not null default 0")
+    private long nbCategories;
 
     public LocalDate getCreatedAt() {
         return createdAt;
@@ -110,11 +131,27 @@ public class Shop {
         this.products = products;
     }
 
-    public Long getNbCategories() {
+    public long getVersion() {
+        return version;
+    }
+
+    public void setVersion(long version) {
+        this.version = version;
+    }
+
+    public Instant getUpdatedAt() {
+        return updatedAt;
+    }
+
+    public void setUpdatedAt(Instant updatedAt) {
+        this.updatedAt = updatedAt;
+    }
+
+    public long getNbCategories() {
         return nbCategories;
     }
 
-    public void setNbCategories(Long nbCategories) {
+    public void setNbCategories(long nbCategories) {
         this.nbCategories = nbCategories;
     }
 }
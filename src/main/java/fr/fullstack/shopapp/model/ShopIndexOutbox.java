@@ -0,0 +1,99 @@
+package fr.fullstack.shopapp.model;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
+
+import java.time.Instant;
+
+/**
+ * Pending change of a shop to apply to the shop search index. Written in the same transaction as
+ * the change, the dispatcher then indexes the shop as it is in the database, or deletes it from
+ * the index if the shop no longer exists. An entry that keeps failing is parked: left in the table
+ * for investigation, but no longer dispatched.
+ */
+@Entity
+@Table(name = "shop_index_outbox", indexes = {
+        @Index(name = "idx_shop_index_outbox_next_attempt_at", columnList = "next_attempt_at, id")
+})
+public class ShopIndexOutbox {
+    @Column(nullable = false)
+    private int attempts;
+
+    @Column(name = "created_at", nullable = false)
+    private Instant createdAt;
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "next_attempt_at", nullable = false)
+    private Instant nextAttemptAt;
+
+    @Column(name = "parked_at")
+    private Instant parkedAt;
+
+    @Column(name = "shop_id", nullable = false)
+    private long shopId;
+
+    public ShopIndexOutbox() {
+    }
+
+    public ShopIndexOutbox(long shopId) {
+        this.shopId = shopId;
+        this.createdAt = Instant.now();
+        this.nextAttemptAt = this.createdAt;
+    }
+
+    public int getAttempts() {
+        return attempts;
+    }
+
+    public Instant getCreatedAt() {
+        return createdAt;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public Instant getNextAttemptAt() {
+        return nextAttemptAt;
+    }
+
+    public Instant getParkedAt() {
+        return parkedAt;
+    }
+
+    public long getShopId() {
+        return shopId;
+    }
+
+    public void setAttempts(int attempts) {
+        this.attempts = attempts;
+    }
+
+    public void setCreatedAt(Instant createdAt) {
+        this.createdAt = createdAt;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public void setNextAttemptAt(Instant nextAttemptAt) {
+        this.nextAttemptAt = nextAttemptAt;
+    }
+
+    public void setParkedAt(Instant parkedAt) {
+        this.parkedAt = parkedAt;
+    }
+
+    public void setShopId(long shopId) {
+        this.shopId = shopId;
+    }
+}
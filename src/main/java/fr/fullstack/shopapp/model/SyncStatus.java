@@ -1,31 +1,91 @@
 package fr.fullstack.shopapp.model;
 
+import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
 
+import java.time.Instant;
+
 @Entity
 public class SyncStatus {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
 
+    @Column(name = "failed_count", nullable = false, columnDefinition = "bigint not null default 0")
+    private long failedCount;
+
+    @Column(name = "index_name")
+    private String indexName;
+
+    @Column(name = "indexed_count", nullable = false, columnDefinition = "bigint not null default 0")
+    private long indexedCount;
+
+    // Highest shop id sent to the index, the next run restarts right after it
+    @Column(name = "last_shop_id", nullable = false, columnDefinition = "bigint not null default 0")
+    private long lastShopId;
+
     private boolean syncCompleted;
 
+    // Shops updated up to this time are in the index, the incremental reindex starts after it
+    @Column(name = "watermark")
+    private Instant watermark;
+
+    public long getFailedCount() {
+        return failedCount;
+    }
+
     public Long getId() {
         return id;
     }
 
-    public void setId(Long id) {
-        this.id = id;
+    public String getIndexName() {
+        return indexName;
+    }
+
+    public long getIndexedCount() {
+        return indexedCount;
+    }
+
+    public long getLastShopId() {
+        return lastShopId;
+    }
+
+    public Instant getWatermark() {
+        return watermark;
     }
 
     public boolean isSyncCompleted() {
         return syncCompleted;
     }
 
+    public void setFailedCount(long failedCount) {
+        this.failedCount = failedCount;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public void setIndexName(String indexName) {
+        this.indexName = indexName;
+    }
+
+    public void setIndexedCount(long indexedCount) {
+        this.indexedCount = indexedCount;
+    }
+
+    public void setLastShopId(long lastShopId) {
+        this.lastShopId = lastShopId;
+    }
+
     public void setSyncCompleted(boolean syncCompleted) {
         this.syncCompleted = syncCompleted;
     }
+
+    public void setWatermark(Instant watermark) {
+        this.watermark = watermark;
+    }
 }
@@ -1,12 +1,7 @@
 package fr.fullstack.shopapp.repository.elastic;
 
-import fr.fullstack.shopapp.model.Shop;
-import org.springframework.data.domain.Page;
-import org.springframework.data.domain.Pageable;
+import fr.fullstack.shopapp.document.ShopDocument;
 import org.springframework.data.elasticsearch.repository.ElasticsearchRepository;
 
-import java.time.LocalDate;
-
-public interface ShopElasticRepository extends ElasticsearchRepository<Shop, Long> {
-    Page<Shop> findAllByNameContainingAndCreatedAtAfterAndCreatedAtBeforeAndInVacationsEquals(String name, LocalDate after, LocalDate before, Boolean inVacations, Pageable pageable);
+public interface ShopElasticRepository extends ElasticsearchRepository<ShopDocument, Long> {
 }
@@ -1,10 +1,56 @@
 package fr.fullstack.shopapp.repository.jpa;
 
 import fr.fullstack.shopapp.model.Category;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
 
 public interface CategoryRepository extends JpaRepository<Category, Long> {
+    // Not in the query cache: its results are per node, kept longer than the staleness bound of the
+    // listing responses (shop.response-cache.expire-after-write)
     Page<Category> findByOrderByIdAsc(Pageable pageable);
+
+    @Query(
+            value = "SELECT DISTINCT p.shop_id FROM products_categories pc JOIN products p ON p.id = pc.product_id "
+                    + "WHERE pc.category_id IN ?1 AND p.shop_id IS NOT NULL",
+            nativeQuery = true
+    )
+    List<Long> findShopIdsByCategoryIdIn(Collection<Long> categoryIds);
+
+    @Query("SELECT c.version FROM Category c WHERE c.id = ?1")
+    Optional<Long> findVersionById(long id);
+
+    // Native statements declare the tables they change, otherwise Hibernate empties the whole
+    // second-level cache
+    @Modifying(flushAutomatically = true)
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_NATIVE_SPACES, value = "categories"))
+    @Query(value = "UPDATE categories SET version = version + 1 WHERE id = ?1", nativeQuery = true)
+    void incrementVersion(long categoryId);
+
+    // DELETION
+    // The products losing a category change too
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_NATIVE_SPACES, value = "products_categories"),
+            @QueryHint(name = HibernateHints.HINT_NATIVE_SPACES, value = "products")
+    })
+    @Query(
+            value = "WITH links AS (DELETE FROM products_categories WHERE category_id IN ?1 RETURNING product_id) "
+                    + "UPDATE products SET version = version + 1 WHERE id IN (SELECT product_id FROM links)",
+            nativeQuery = true
+    )
+    int deleteProductLinks(Collection<Long> categoryIds);
+
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("DELETE FROM Category c WHERE c.id IN ?1")
+    int deleteByIdIn(Collection<Long> categoryIds);
 }
@@ -1,12 +1,24 @@
 package fr.fullstack.shopapp.repository.jpa;
 
+import fr.fullstack.shopapp.dto.LocalizedProductView;
 import fr.fullstack.shopapp.model.Product;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
 
 public interface ProductRepository extends JpaRepository<Product, Long> {
+    @EntityGraph(attributePaths = {"shop"})
     Page<Product> findByOrderByIdAsc(Pageable pageable);
 
     @Query(value = "SELECT * FROM Products WHERE shop_id = ?1", nativeQuery = true)
@@ -16,4 +28,74 @@ public interface ProductRepository extends JpaRepository<Product, Long> {
             + "products_categories pc WHERE pc.category_id = ?2)",
            nativeQuery = true)
     Page<Product> findByShopAndCategory(Long shopId, Long categoryId, Pageable pageable);
+
+    // LOCALIZED VIEWS
+    // One row per product: the localized product in the asked locale, else the french one; the
+    // lowest id when a product has several in the same locale, so that the pages match their count
+    String VIEW_QUERY = "SELECT new fr.fullstack.shopapp.dto.LocalizedProductView("
+            + "p.id, p.price, s.id, p.version, lp.locale, lp.name, lp.description) "
+            + "FROM Product p LEFT JOIN p.shop s JOIN p.localizedProduct lp "
+            + "WHERE lp.id = COALESCE("
+            + "(SELECT MIN(l.id) FROM Product p2 JOIN p2.localizedProduct l WHERE p2 = p AND l.locale = :locale), "
+            + "(SELECT MIN(l.id) FROM Product p2 JOIN p2.localizedProduct l WHERE p2 = p AND l.locale = 'FR')) ";
+
+    @Query(VIEW_QUERY + "AND p.id = :id")
+    Optional<LocalizedProductView> findViewById(@Param("id") long id, @Param("locale") String locale);
+
+    @Query(value = VIEW_QUERY + "ORDER BY p.id", countQuery = "SELECT COUNT(p) FROM Product p")
+    Page<LocalizedProductView> findViews(@Param("locale") String locale, Pageable pageable);
+
+    @Query(
+            value = VIEW_QUERY + "AND s.id = :shopId",
+            countQuery = "SELECT COUNT(p) FROM Product p WHERE p.shop.id = :shopId"
+    )
+    Page<LocalizedProductView> findViewsByShop(
+            @Param("shopId") long shopId, @Param("locale") String locale, Pageable pageable);
+
+    @Query(
+            value = VIEW_QUERY + "AND s.id = :shopId AND p.id IN ("
+                    + "SELECT pc.id FROM Product pc JOIN pc.categories c WHERE c.id = :categoryId)",
+            countQuery = "SELECT COUNT(p) FROM Product p WHERE p.shop.id = :shopId AND p.id IN ("
+                    + "SELECT pc.id FROM Product pc JOIN pc.categories c WHERE c.id = :categoryId)"
+    )
+    Page<LocalizedProductView> findViewsByShopAndCategory(
+            @Param("shopId") long shopId,
+            @Param("categoryId") long categoryId,
+            @Param("locale") String locale,
+            Pageable pageable
+    );
+
+    @Query("SELECT p.version FROM Product p WHERE p.id = ?1")
+    Optional<Long> findVersionById(long id);
+
+    // ETag of a product as served by the API: it embeds its shop and its categories
+    @Query(
+            value = "SELECT p.version || '.' || COALESCE(s.id, 0) || '.' || COALESCE(s.version, 0) || '.' || "
+                    + "COALESCE((SELECT SUM(c.version) FROM products_categories pc "
+                    + "JOIN categories c ON c.id = pc.category_id WHERE pc.product_id = p.id), 0) "
+                    + "FROM products p LEFT JOIN shops s ON s.id = p.shop_id WHERE p.id = ?1",
+            nativeQuery = true
+    )
+    Optional<String> findVersionTagById(long id);
+
+    @Modifying(flushAutomatically = true)
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_NATIVE_SPACES, value = "products"))
+    @Query(value = "UPDATE products SET version = version + 1 WHERE id = ?1", nativeQuery = true)
+    void incrementVersion(long productId);
+
+    // INDEXING
+    @EntityGraph(attributePaths = {"localizedProduct"})
+    List<Product> findWithLocalizedProductsByShopIdIn(Collection<Long> shopIds);
+
+    // KEYSET
+    @Query(value = "SELECT * FROM products WHERE id > ?1 ORDER BY id", nativeQuery = true)
+    List<Product> findAfter(long lastId, Pageable pageable);
+
+    @Query(value = "SELECT * FROM products WHERE shop_id = ?1 AND id > ?2 ORDER BY id", nativeQuery = true)
+    List<Product> findByShopAfter(Long shopId, long lastId, Pageable pageable);
+
+    @Query(value = "SELECT * FROM products p WHERE p.shop_id = ?1 AND p.id > ?3 AND p.id IN (SELECT pc.product_id FROM "
+            + "products_categories pc WHERE pc.category_id = ?2) ORDER BY p.id",
+           nativeQuery = true)
+    List<Product> findByShopAndCategoryAfter(Long shopId, Long categoryId, long lastId, Pageable pageable);
 }
@@ -0,0 +1,23 @@
+package fr.fullstack.shopapp.repository.jpa;
+
+import fr.fullstack.shopapp.model.ShopIndexOutbox;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+
+import java.time.Instant;
+import java.util.List;
+
+public interface ShopIndexOutboxRepository extends JpaRepository<ShopIndexOutbox, Long> {
+    long countByParkedAtIsNotNull();
+
+    long countByParkedAtIsNull();
+
+    @Query("SELECT MIN(o.createdAt) FROM ShopIndexOutbox o WHERE o.parkedAt IS NULL")
+    Instant findOldestCreatedAt();
+
+    // Rows locked by another dispatcher are skipped, so several instances can claim the outbox
+    // concurrently; the claim is a lease on next_attempt_at, the lock only lasts its transaction
+    @Query(value = "SELECT * FROM shop_index_outbox WHERE parked_at IS NULL AND next_attempt_at <= ?1 "
+            + "ORDER BY id LIMIT ?2 FOR UPDATE SKIP LOCKED", nativeQuery = true)
+    List<ShopIndexOutbox> lockDue(Instant now, int limit);
+}
@@ -1,50 +1,183 @@
 package fr.fullstack.shopapp.repository.jpa;
 
 import fr.fullstack.shopapp.model.Shop;
-import org.springframework.data.domain.Page;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 
+import java.time.Instant;
 import java.time.LocalDate;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
 
-public interface ShopRepository extends JpaRepository<Shop, Long> {
-    Page<Shop> findByCreatedAtBetween(LocalDate dateStart, LocalDate dateEnd, Pageable pageable);
+public interface ShopRepository extends JpaRepository<Shop, Long>, JpaSpecificationExecutor<Shop> {
+    // Digest of the fields of a shop in the search index: its columns, and the price, categories
+    // and localized names of its products
+    String FINGERPRINT = "md5(concat_ws('|', s.name, s.created_at, s.in_vacations, s.nb_products, s.nb_categories, "
+            + "(SELECT string_agg(concat_ws(';', p.id, p.price, "
+            + "(SELECT string_agg(CAST(pc.category_id AS text), ',' ORDER BY pc.category_id) "
+            + "FROM products_categories pc WHERE pc.product_id = p.id), "
+            + "(SELECT string_agg(concat_ws('=', l.locale, l.name, l.description), ',' ORDER BY l.locale) "
+            + "FROM products_localized_product pl JOIN localized_product l ON l.id = pl.localized_product_id "
+            + "WHERE pl.product_id = p.id)), '/' ORDER BY p.id) "
+            + "FROM products p WHERE p.shop_id = s.id)))";
 
-    Page<Shop> findByCreatedAtGreaterThan(LocalDate date, Pageable pageable);
+    @Query("SELECT s.version FROM Shop s WHERE s.id = ?1")
+    Optional<Long> findVersionById(long id);
 
-    Page<Shop> findByCreatedAtLessThan(LocalDate date, Pageable pageable);
+    // INDEXING
+    @Query("SELECT s.id FROM Shop s WHERE s.id > ?1 ORDER BY s.id ASC")
+    List<Long> findIdsAfter(long lastId, Pageable pageable);
 
-    // FILTERS
-    Page<Shop> findByInVacations(boolean inVacations, Pageable pageable);
+    @EntityGraph(attributePaths = {"openingHours"})
+    List<Shop> findWithOpeningHoursByIdIn(Collection<Long> ids);
 
-    Page<Shop> findByInVacationsAndCreatedAtGreaterThan(boolean inVacations, LocalDate date, Pageable pageable);
+    @Query("SELECT MAX(s.updatedAt) FROM Shop s")
+    Optional<Instant> findMaxUpdatedAt();
 
-    Page<Shop> findByInVacationsAndCreatedAtGreaterThanAndCreatedAtLessThan(
-            boolean inVacations, LocalDate dateStart,
-            LocalDate dateEnd, Pageable pageable
-    );
+    @Query("SELECT s FROM Shop s WHERE s.updatedAt <= ?3 AND (s.updatedAt > ?1 OR (s.updatedAt = ?1 AND s.id > ?2)) "
+            + "ORDER BY s.updatedAt ASC, s.id ASC")
+    List<Shop> findUpdatedAfter(Instant updatedAt, long lastId, Instant until, Pageable pageable);
 
-    Page<Shop> findByInVacationsAndCreatedAtLessThan(boolean inVacations, LocalDate date, Pageable pageable);
+    // RECONCILIATION
+    @Query("SELECT s.id FROM Shop s WHERE s.id IN ?1")
+    List<Long> findExistingIds(Collection<Long> ids);
 
-    Page<Shop> findByOrderByCreatedAtAsc(Pageable pageable);
+    @Query(value = "SELECT s.id AS id, " + FINGERPRINT + " AS fingerprint FROM shops s WHERE s.id IN ?1", nativeQuery = true)
+    List<ShopFingerprint> findFingerprints(Collection<Long> ids);
 
-    Page<Shop> findByOrderByIdAsc(Pageable pageable);
+    @Query(
+            value = "SELECT s.id AS id, " + FINGERPRINT + " AS fingerprint FROM shops s "
+                    + "WHERE s.id > ?1 AND s.id <= ?2 ORDER BY s.id",
+            nativeQuery = true
+    )
+    List<ShopFingerprint> findFingerprintsBetween(long fromIdExclusive, long toIdInclusive);
+
+    // Only the checksum of the segment leaves the database
+    @Query(
+            value = "SELECT COUNT(*) AS count, "
+                    + "md5(string_agg(CAST(f.id AS text) || '=' || f.fingerprint, ',' ORDER BY f.id)) AS checksum "
+                    + "FROM (SELECT s.id, " + FINGERPRINT + " AS fingerprint FROM shops s "
+                    + "WHERE s.id > ?1 AND s.id <= ?2) f",
+            nativeQuery = true
+    )
+    SegmentChecksum findSegmentChecksum(long fromIdExclusive, long toIdInclusive);
+
+    // KEYSET
+    List<Shop> findByIdGreaterThanOrderByIdAsc(long lastId, Pageable pageable);
+
+    @Query("SELECT s FROM Shop s ORDER BY s.createdAt ASC, s.id ASC")
+    List<Shop> findOrderedByCreatedAt(Pageable pageable);
 
-    // SORT
-    Page<Shop> findByOrderByNameAsc(Pageable pageable);
+    @Query("SELECT s FROM Shop s WHERE s.createdAt > ?1 OR (s.createdAt = ?1 AND s.id > ?2) "
+            + "ORDER BY s.createdAt ASC, s.id ASC")
+    List<Shop> findOrderedByCreatedAtAfter(LocalDate createdAt, long lastId, Pageable pageable);
 
+    @Query("SELECT s FROM Shop s ORDER BY s.name ASC, s.id ASC")
+    List<Shop> findOrderedByName(Pageable pageable);
+
+    @Query("SELECT s FROM Shop s WHERE s.name > ?1 OR (s.name = ?1 AND s.id > ?2) ORDER BY s.name ASC, s.id ASC")
+    List<Shop> findOrderedByNameAfter(String name, long lastId, Pageable pageable);
+
+    @Query("SELECT s FROM Shop s ORDER BY s.nbCategories DESC, s.id ASC")
+    List<Shop> findOrderedByNbCategories(Pageable pageable);
+
+    @Query("SELECT s FROM Shop s WHERE s.nbCategories < ?1 OR (s.nbCategories = ?1 AND s.id > ?2) "
+            + "ORDER BY s.nbCategories DESC, s.id ASC")
+    List<Shop> findOrderedByNbCategoriesAfter(long nbCategories, long lastId, Pageable pageable);
+
+    @Query("SELECT s FROM Shop s ORDER BY s.nbProducts DESC, s.id ASC")
+    List<Shop> findOrderedByNbProducts(Pageable pageable);
+
+    @Query("SELECT s FROM Shop s WHERE s.nbProducts < ?1 OR (s.nbProducts = ?1 AND s.id > ?2) "
+            + "ORDER BY s.nbProducts DESC, s.id ASC")
+    List<Shop> findOrderedByNbProductsAfter(long nbProducts, long lastId, Pageable pageable);
+
+    // DELETION
+    // Native statements declare the tables they change, otherwise Hibernate empties the whole
+    // second-level cache
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_NATIVE_SPACES, value = "products"))
+    @Query(value = "UPDATE products SET shop_id = NULL, version = version + 1 WHERE shop_id IN ?1", nativeQuery = true)
+    int detachProducts(Collection<Long> shopIds);
+
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_NATIVE_SPACES, value = "shops_opening_hours"),
+            @QueryHint(name = HibernateHints.HINT_NATIVE_SPACES, value = "opening_hours")
+    })
     @Query(
-            value = "SELECT *,"
-                    + "(SELECT COUNT(*) FROM products p WHERE p.shop_id = s.id) as nbProducts, "
-                    + "(SELECT COUNT(DISTINCT pc.category_id) FROM products_categories pc WHERE pc.product_id IN "
-                    + "(SELECT p.id FROM products p WHERE p.shop_id = s.id)) as nbCategories "
-                    + "FROM shops s "
-                    + "ORDER BY (SELECT COUNT(*) FROM products p WHERE p.shop_id = s.id) DESC",
-            countQuery = "SELECT * "
-                    + "FROM shops s "
-                    + "ORDER BY (SELECT COUNT(*) FROM products p WHERE p.shop_id = s.id) DESC",
+            value = "WITH links AS (DELETE FROM shops_opening_hours WHERE shop_id IN ?1 RETURNING opening_hours_id) "
+                    + "DELETE FROM opening_hours WHERE id IN (SELECT opening_hours_id FROM links)",
             nativeQuery = true
     )
-    Page<Shop> findByOrderByNbProductsAsc(Pageable pageable);
+    int deleteOpeningHours(Collection<Long> shopIds);
+
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("DELETE FROM Shop s WHERE s.id IN ?1")
+    int deleteByIdIn(Collection<Long> shopIds);
+
+    // VERSIONS
+    @Modifying(flushAutomatically = true)
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_NATIVE_SPACES, value = "shops"))
+    @Query(value = "UPDATE shops SET version = version + 1 WHERE id IN ?1", nativeQuery = true)
+    void incrementVersions(Collection<Long> shopIds);
+
+    // COUNTERS
+    @Query(
+            value = "SELECT EXISTS (SELECT 1 FROM shops s WHERE s.nb_products = 0 "
+                    + "AND EXISTS (SELECT 1 FROM products p WHERE p.shop_id = s.id))",
+            nativeQuery = true
+    )
+    boolean existsUncountedProducts();
+
+    @Modifying(flushAutomatically = true)
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_NATIVE_SPACES, value = "shops"))
+    @Query(value = "UPDATE shops SET nb_products = nb_products + ?2, version = version + 1 WHERE id = ?1", nativeQuery = true)
+    void incrementNbProducts(long shopId, long delta);
+
+    @Modifying(flushAutomatically = true)
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_NATIVE_SPACES, value = "shops"))
+    @Query(
+            value = "UPDATE shops s SET version = version + 1, nb_categories = "
+                    + "(SELECT COUNT(DISTINCT pc.category_id) FROM products_categories pc "
+                    + "JOIN products p ON p.id = pc.product_id WHERE p.shop_id = s.id) "
+                    + "WHERE s.id IN ?1",
+            nativeQuery = true
+    )
+    void refreshNbCategories(Collection<Long> shopIds);
+
+    @Modifying(flushAutomatically = true)
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_NATIVE_SPACES, value = "shops"))
+    @Query(
+            value = "UPDATE shops s SET nb_products = c.nb_products, nb_categories = c.nb_categories, "
+                    + "version = s.version + 1 "
+                    + "FROM (SELECT sh.id, "
+                    + "(SELECT COUNT(*) FROM products p WHERE p.shop_id = sh.id) AS nb_products, "
+                    + "(SELECT COUNT(DISTINCT pc.category_id) FROM products_categories pc "
+                    + "JOIN products p ON p.id = pc.product_id WHERE p.shop_id = sh.id) AS nb_categories "
+                    + "FROM shops sh WHERE sh.id > ?1 AND sh.id <= ?2) c "
+                    + "WHERE s.id = c.id AND (s.nb_products <> c.nb_products OR s.nb_categories <> c.nb_categories)",
+            nativeQuery = true
+    )
+    int reconcileCounters(long fromIdExclusive, long toIdInclusive);
+
+    interface SegmentChecksum {
+        String getChecksum();
+
+        long getCount();
+    }
+
+    interface ShopFingerprint {
+        String getFingerprint();
+
+        long getId();
+    }
 }
@@ -0,0 +1,37 @@
+package fr.fullstack.shopapp.repository.jpa;
+
+import fr.fullstack.shopapp.model.Shop;
+import org.springframework.data.jpa.domain.Specification;
+
+import java.time.LocalDate;
+import java.util.Locale;
+
+/**
+ * Filters of the shop listing, combined by {@link ShopRepository#findAll(Specification,
+ * org.springframework.data.domain.Pageable)} into a single statement.
+ */
+public final class ShopSpecifications {
+    private ShopSpecifications() {
+    }
+
+    public static Specification<Shop> createdAfter(LocalDate date) {
+        return (root, query, cb) -> cb.greaterThan(root.get("createdAt"), date);
+    }
+
+    public static Specification<Shop> createdBefore(LocalDate date) {
+        return (root, query, cb) -> cb.lessThan(root.get("createdAt"), date);
+    }
+
+    public static Specification<Shop> inVacations(boolean inVacations) {
+        return (root, query, cb) -> cb.equal(root.get("inVacations"), inVacations);
+    }
+
+    // Served by the trigram index on lower(name), see sql/create_tables.sql
+    public static Specification<Shop> nameContains(String name) {
+        String pattern = "%" + name.toLowerCase(Locale.ROOT)
+                .replace("\\", "\\\\")
+                .replace("%", "\\%")
+                .replace("_", "\\_") + "%";
+        return (root, query, cb) -> cb.like(cb.lower(root.get("name")), pattern, '\\');
+    }
+}
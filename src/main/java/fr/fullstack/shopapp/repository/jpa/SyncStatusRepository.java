@@ -3,6 +3,8 @@ package fr.fullstack.shopapp.repository.jpa;
 import fr.fullstack.shopapp.model.SyncStatus;
 import org.springframework.data.jpa.repository.JpaRepository;
 
+import java.util.Optional;
+
 public interface SyncStatusRepository extends JpaRepository<SyncStatus, Long> {
-    boolean existsBySyncCompletedTrue();
-}
\ No newline at end of file
+    Optional<SyncStatus> findFirstByIndexNameOrderByIdDesc(String indexName);
+}
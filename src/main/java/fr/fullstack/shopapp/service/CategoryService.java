@@ -1,30 +1,55 @@
 package fr.fullstack.shopapp.service;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import fr.fullstack.shopapp.config.CacheConfig;
 import fr.fullstack.shopapp.model.Category;
-import fr.fullstack.shopapp.model.Product;
 import fr.fullstack.shopapp.repository.jpa.CategoryRepository;
+import fr.fullstack.shopapp.repository.jpa.ShopRepository;
+import fr.fullstack.shopapp.service.ListingResponseCache.Listing;
+import fr.fullstack.shopapp.util.ETags;
+import io.micrometer.observation.annotation.Observed;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.annotation.Cacheable;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
-import jakarta.persistence.EntityManager;
-import jakarta.persistence.PersistenceContext;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
+@Observed(name = "shop.service")
 @Service
 public class CategoryService {
+    @PersistenceContext
+    private EntityManager em;
+
     @Autowired
     private CategoryRepository categoryRepository;
 
-    @PersistenceContext
-    private EntityManager em;
+    @Autowired
+    private EntityCacheInvalidator entityCacheInvalidator;
+
+    @Autowired
+    private ListingResponseCache listingResponseCache;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private ShopIndexOutboxService shopIndexOutboxService;
+
+    @Autowired
+    private ShopRepository shopRepository;
 
     public Category createCategory(Category category) throws Exception {
         try {
-            return categoryRepository.save(category);
+            Category newCategory = categoryRepository.save(category);
+            listingResponseCache.invalidate(Listing.CATEGORIES);
+            return newCategory;
         } catch (Exception e) {
             throw new Exception(e.getMessage());
         }
@@ -33,48 +58,73 @@ public class CategoryService {
     @Transactional
     public void deleteCategoryById(long id) throws Exception {
         try {
-            Category category = getCategory(id);
-            // delete nested relations with products
-            deleteNestedRelations(category);
-            categoryRepository.deleteById(id);
+            getCategory(id);
+            deleteCategories(List.of(id));
         } catch (Exception e) {
             throw new Exception(e.getMessage());
         }
     }
 
+    /**
+     * Delete the given categories, ignoring the unknown ids. Their products are kept.
+     */
+    @Transactional
+    public void deleteCategories(Collection<Long> ids) {
+        if (ids.isEmpty()) {
+            return;
+        }
+        List<Long> shopIds = categoryRepository.findShopIdsByCategoryIdIn(ids);
+        // The cached products of these categories and shops are evicted too
+        entityCacheInvalidator.evictCategories(ids);
+        entityCacheInvalidator.evictShops(shopIds);
+        // delete nested relations with products, in one statement
+        categoryRepository.deleteProductLinks(ids);
+        categoryRepository.deleteByIdIn(ids);
+        listingResponseCache.invalidate(Listing.CATEGORIES);
+        // the shops of these products may have lost a category
+        if (!shopIds.isEmpty()) {
+            shopRepository.refreshNbCategories(shopIds);
+            shopIndexOutboxService.enqueueAll(shopIds);
+            listingResponseCache.invalidate(Listing.SHOPS);
+        }
+    }
+
+    @Cacheable(cacheNames = CacheConfig.CATEGORIES, key = "#id")
+    @Transactional(readOnly = true)
     public Category getCategoryById(long id) throws Exception {
         try {
-            return getCategory(id);
+            return objectMapper.convertValue(getCategory(id), Category.class);
         } catch (Exception e) {
             throw new Exception(e.getMessage());
         }
     }
 
+    @Transactional(readOnly = true)
+    public Optional<String> getCategoryETag(long id) {
+        return categoryRepository.findVersionById(id).map(version -> ETags.category(id, version));
+    }
+
+    @Transactional(readOnly = true)
     public Page<Category> getCategoryList(Pageable pageable) {
         return categoryRepository.findByOrderByIdAsc(pageable);
     }
 
+    @Transactional
     public Category updateCategory(Category category) throws Exception {
         try {
             getCategory(category.getId());
-            return this.createCategory(category);
+            entityCacheInvalidator.evictCategory(category.getId());
+            categoryRepository.incrementVersion(category.getId());
+            Category newCategory = this.createCategory(category);
+            // Read the version bumped by the database
+            em.flush();
+            em.refresh(newCategory);
+            return newCategory;
         } catch (Exception e) {
             throw new Exception(e.getMessage());
         }
     }
 
-    private void deleteNestedRelations(Category category) {
-        List<Product> products = category.getProducts();
-        for (int i = 0; i < products.size(); i++) {
-            Product product = products.get(i);
-            List<Category> categories = product.getCategories();
-            categories.remove(category);
-            product.setCategories(categories);
-            em.merge(product);
-            em.flush();
-        }
-    }
-
     private Category getCategory(Long id) throws Exception {
         Optional<Category> category = categoryRepository.findById(id);
         if (!category.isPresent()) {
@@ -0,0 +1,93 @@
+package fr.fullstack.shopapp.service;
+
+import fr.fullstack.shopapp.config.CacheConfig;
+import fr.fullstack.shopapp.model.Product;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Predicate;
+
+/**
+ * Evicts the cached entities touched by a write, including the ones embedding them: a cached
+ * product carries its shop and its categories.
+ * <p>
+ * Entries are evicted right away and once more after the commit, so that a read running
+ * concurrently with the transaction cannot keep the previous state in the cache.
+ */
+@Service
+public class EntityCacheInvalidator {
+    @Autowired
+    private CacheManager cacheManager;
+
+    public void evictCategory(long categoryId) {
+        evictCategories(List.of(categoryId));
+    }
+
+    /**
+     * Evict the categories and the cached products of these categories.
+     */
+    public void evictCategories(Collection<Long> categoryIds) {
+        if (categoryIds.isEmpty()) {
+            return;
+        }
+        Set<Long> evicted = Set.copyOf(categoryIds);
+        evict(CacheConfig.CATEGORIES, evicted);
+        evictProducts(product -> product.getCategories().stream().anyMatch(c -> evicted.contains(c.getId())));
+    }
+
+    public void evictProduct(long productId) {
+        evict(CacheConfig.PRODUCTS, List.of(productId));
+    }
+
+    /**
+     * Evict the shops and the cached products of these shops.
+     */
+    public void evictShops(Collection<Long> shopIds) {
+        if (shopIds.isEmpty()) {
+            return;
+        }
+        Set<Long> evicted = Set.copyOf(shopIds);
+        evict(CacheConfig.SHOPS, evicted);
+        evictProducts(product -> product.getShop() != null && evicted.contains(product.getShop().getId()));
+    }
+
+    private void evict(String cacheName, Collection<Long> ids) {
+        Cache cache = cacheManager.getCache(cacheName);
+        if (cache == null || ids.isEmpty()) {
+            return;
+        }
+        List<Long> evicted = List.copyOf(ids);
+        runNowAndAfterCommit(() -> evicted.forEach(cache::evict));
+    }
+
+    /**
+     * Scan the cached products rather than querying the products of a shop or a category: the
+     * cost is bounded by the cache size, whatever the size of the shop.
+     */
+    private void evictProducts(Predicate<Product> predicate) {
+        Cache cache = cacheManager.getCache(CacheConfig.PRODUCTS);
+        if (cache != null && cache.getNativeCache() instanceof com.github.benmanes.caffeine.cache.Cache<?, ?> products) {
+            runNowAndAfterCommit(() -> products.asMap().values()
+                    .removeIf(value -> value instanceof Product product && predicate.test(product)));
+        }
+    }
+
+    private void runNowAndAfterCommit(Runnable eviction) {
+        eviction.run();
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    eviction.run();
+                }
+            });
+        }
+    }
+}
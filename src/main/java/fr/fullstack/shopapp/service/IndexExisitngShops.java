@@ -1,62 +1,113 @@
 package fr.fullstack.shopapp.service;
 
 
-import fr.fullstack.shopapp.model.Shop;
 import fr.fullstack.shopapp.model.SyncStatus;
-import fr.fullstack.shopapp.repository.elastic.ShopElasticRepository;
-import fr.fullstack.shopapp.repository.jpa.ShopRepository;
-import fr.fullstack.shopapp.repository.jpa.SyncStatusRepository;
-import jakarta.annotation.PostConstruct;
-import jakarta.persistence.EntityManager;
-import jakarta.persistence.PersistenceContext;
+import jakarta.annotation.PreDestroy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.data.domain.Page;
-import org.springframework.data.domain.Pageable;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Service;
 
-import java.util.Optional;
+import java.time.Instant;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
 
+/**
+ * Builds the search index once the application is started, on a background thread: the
+ * endpoints backed by the database are served meanwhile, the search waits for {@link #isReady()}.
+ */
 @Service
 public class IndexExisitngShops {
 
     private static final Logger log = LoggerFactory.getLogger(IndexExisitngShops.class);
-    @PersistenceContext
-    EntityManager em;
 
-    private final ShopService shopService;
-    private final ShopElasticRepository shopElasticRepository;
-    private final ShopRepository shopRepository;
-    private final SyncStatusRepository syncStatusRepository;
+    public enum State {
+        PENDING, RUNNING, COMPLETED, FAILED
+    }
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "shop-index-bootstrap");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final ShopReindexService shopReindexService;
+    private final AtomicReference<State> state = new AtomicReference<>(State.PENDING);
+
+    private volatile String error;
+    private volatile Instant finishedAt;
+    private volatile Instant startedAt;
 
-    public IndexExisitngShops(ShopService shopService, ShopElasticRepository shopElasticRepository, ShopRepository shopRepository, SyncStatusRepository syncStatusRepository) {
-        this.shopService = shopService;
-        this.shopElasticRepository = shopElasticRepository;
-        this.shopRepository = shopRepository;
-        this.syncStatusRepository = syncStatusRepository;
+    public IndexExisitngShops(ShopReindexService shopReindexService) {
+        this.shopReindexService = shopReindexService;
     }
 
-    @PostConstruct
+    @EventListener(ApplicationReadyEvent.class)
     public void syncDatabaseToElasticsearch() {
-        // Check if synchronization has already been completed
-        if (syncStatusRepository.existsBySyncCompletedTrue()) {
-            IndexExisitngShops.log.info("Synchronization has already been completed.");
-            return;
+        start();
+    }
+
+    /**
+     * Start the indexing unless it is running or done, e.g. again after a failure.
+     *
+     * @return whether it was started
+     */
+    public boolean start() {
+        State current = state.get();
+        if (current == State.RUNNING || current == State.COMPLETED || !state.compareAndSet(current, State.RUNNING)) {
+            return false;
         }
 
-        Page<Shop> shops = shopService.getShopList(Optional.empty(), Optional.empty(), Optional.empty(),Optional.empty(), Optional.empty(), Pageable.unpaged());
-        shops.forEach(shop -> {
-            try {
-                shopService.syncExistingShopsToElasticsearch(shop);
-            } catch (Exception e) {
-                e.printStackTrace();
-            }
-        });
+        startedAt = Instant.now();
+        finishedAt = null;
+        error = null;
+        executor.execute(this::sync);
+        return true;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public Instant getFinishedAt() {
+        return finishedAt;
+    }
+
+    public Instant getStartedAt() {
+        return startedAt;
+    }
+
+    public State getState() {
+        return state.get();
+    }
 
-        SyncStatus status = new SyncStatus();
-        status.setSyncCompleted(true);
-        syncStatusRepository.save(status);
+    public boolean isReady() {
+        return state.get() == State.COMPLETED;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
 
-        IndexExisitngShops.log.info("Successfully synced " + shops + " shops to Elasticsearch.");
+    private void sync() {
+        try {
+            // Check if synchronization has already been completed
+            if (shopReindexService.isCompleted()) {
+                IndexExisitngShops.log.info("Synchronization has already been completed.");
+            } else {
+                SyncStatus status = shopReindexService.reindex();
+                IndexExisitngShops.log.info("Successfully synced {} shops to Elasticsearch.", status.getIndexedCount());
+            }
+            state.set(State.COMPLETED);
+        } catch (Exception e) {
+            // The checkpoint is kept, the next start resumes after the last indexed shop
+            IndexExisitngShops.log.error("Synchronization to Elasticsearch interrupted", e);
+            error = e.getMessage();
+            state.set(State.FAILED);
+        } finally {
+            finishedAt = Instant.now();
+        }
     }
 }
@@ -0,0 +1,109 @@
+package fr.fullstack.shopapp.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Serialized responses of the hot listing pages, served without querying nor serializing again.
+ * <p>
+ * Entries are keyed by the generation of their listing: a write bumps the generation, so that the
+ * entries of the previous one are never read again and age out of the cache. The generation is
+ * bumped right away and once more after the commit, so that a page read concurrently with the
+ * transaction cannot be cached under the new generation.
+ * <p>
+ * The generations are local to the instance: the writes of the other instances, and the changes
+ * made directly in the database, do not bump them. Entries therefore also expire
+ * {@code shop.response-cache.expire-after-write} after being cached, which bounds how long such a
+ * change is not seen.
+ */
+@Service
+public class ListingResponseCache {
+
+    public enum Listing {
+        CATEGORIES, SHOPS
+    }
+
+    public record CachedResponse(String contentType, String eTag, byte[] body, byte[] gzippedBody) {
+    }
+
+    private record Key(Listing listing, long generation, String parameters) {
+    }
+
+    private final Cache<Key, CachedResponse> cache;
+    private final AtomicLong categoriesGeneration = new AtomicLong();
+    private final int gzipMinSize;
+    private final AtomicLong shopsGeneration = new AtomicLong();
+
+    public ListingResponseCache(
+            ObjectProvider<MeterRegistry> meterRegistry,
+            @Value("${shop.response-cache.max-entries:1000}") long maxEntries,
+            @Value("${shop.response-cache.expire-after-write:5s}") Duration expireAfterWrite,
+            @Value("${shop.response-cache.gzip-min-size:1024}") int gzipMinSize
+    ) {
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxEntries)
+                .expireAfterWrite(expireAfterWrite)
+                .recordStats()
+                .build();
+        this.gzipMinSize = gzipMinSize;
+        meterRegistry.ifAvailable(registry -> CaffeineCacheMetrics.monitor(registry, cache, "listing-responses"));
+    }
+
+    public long generation(Listing listing) {
+        return counter(listing).get();
+    }
+
+    public CachedResponse get(Listing listing, long generation, String parameters) {
+        return cache.getIfPresent(new Key(listing, generation, parameters));
+    }
+
+    /**
+     * Cache a response read at {@code generation}, which must have been taken before the query.
+     */
+    public CachedResponse put(Listing listing, long generation, String parameters, String contentType, String eTag, byte[] body) {
+        CachedResponse response = new CachedResponse(contentType, eTag, body, body.length < gzipMinSize ? null : gzip(body));
+        cache.put(new Key(listing, generation, parameters), response);
+        return response;
+    }
+
+    public void invalidate(Listing listing) {
+        AtomicLong counter = counter(listing);
+        counter.incrementAndGet();
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    counter.incrementAndGet();
+                }
+            });
+        }
+    }
+
+    private AtomicLong counter(Listing listing) {
+        return listing == Listing.SHOPS ? shopsGeneration : categoriesGeneration;
+    }
+
+    private static byte[] gzip(byte[] body) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(body.length / 4);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(body);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,462 @@
+package fr.fullstack.shopapp.service;
+
+import fr.fullstack.shopapp.model.Shop;
+import fr.fullstack.shopapp.repository.jpa.ShopRepository;
+import fr.fullstack.shopapp.util.WeeklySchedule;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * In-memory index of the weekly opening hours of the shops not in vacations, answering "which
+ * shops are open at this minute of the week" without reading the database.
+ * <p>
+ * Shops are grouped by compiled {@link WeeklySchedule}, each group keeping its ids sorted: a query
+ * tests each distinct schedule once and merges the ids of the open groups up to the requested
+ * page. A write only changes the groups of its shop. The index is built in the background once
+ * the application is started, then rebuilt every {@code shop.opening-hours.rebuild-delay} to pick
+ * up the writes made by other instances; the writes made by this one are applied after their
+ * commit, and replayed on a rebuild running meanwhile.
+ */
+@Service
+public class OpeningHoursIndex {
+
+    private static final Logger log = LoggerFactory.getLogger(OpeningHoursIndex.class);
+
+    private final int batchSize;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "opening-hours-index");
+        thread.setDaemon(true);
+        return thread;
+    });
+    // Not synchronized: a virtual thread blocked on a monitor pins its carrier thread
+    private final ReentrantLock lock = new ReentrantLock();
+    private final ReentrantLock rebuildLock = new ReentrantLock();
+    private final ShopRepository shopRepository;
+    private final TransactionTemplate readTransaction;
+
+    // Guarded by the lock. The writes applied while a rebuild scans the shops, null otherwise
+    private List<Change> pending;
+    private Map<Long, WeeklySchedule> scheduleByShop = new HashMap<>();
+
+    // Replaced on every write (the changed groups only), queries read it without locking
+    private volatile Map<WeeklySchedule, Group> groups = Map.of();
+    private volatile boolean ready;
+
+    public OpeningHoursIndex(
+            ShopRepository shopRepository,
+            PlatformTransactionManager transactionManager,
+            @Value("${shop.opening-hours.batch-size:1000}") int batchSize
+    ) {
+        this.shopRepository = shopRepository;
+        this.batchSize = batchSize;
+        this.readTransaction = new TransactionTemplate(transactionManager);
+        this.readTransaction.setReadOnly(true);
+    }
+
+    public record OpenShops(long[] ids, long total) {
+    }
+
+    /**
+     * Page of the ids of the shops open at this minute of the week, in ascending order, and the
+     * number of shops open.
+     */
+    public OpenShops findOpenAt(int minuteOfWeek, long offset, int limit) {
+        List<Group> open = groups.entrySet().stream()
+                .filter(entry -> entry.getKey().isOpenAt(minuteOfWeek))
+                .map(Map.Entry::getValue)
+                .toList();
+        long total = open.stream().mapToLong(Group::size).sum();
+        if (offset >= total || limit <= 0) {
+            return new OpenShops(new long[0], total);
+        }
+
+        // The ids are distinct across groups: the first id of the page is the one of rank offset + 1
+        long from = offset == 0 ? Long.MIN_VALUE : idOfRank(open, offset + 1);
+        PriorityQueue<GroupIterator> heads = new PriorityQueue<>();
+        for (Group group : open) {
+            GroupIterator cursor = group.from(from);
+            if (cursor.hasNext()) {
+                heads.add(cursor);
+            }
+        }
+        long[] ids = new long[(int) Math.min(limit, total - offset)];
+        for (int i = 0; i < ids.length; i++) {
+            GroupIterator head = heads.poll();
+            ids[i] = head.next();
+            if (head.hasNext()) {
+                heads.add(head);
+            }
+        }
+        return new OpenShops(ids, total);
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void build() {
+        executor.execute(this::rebuild);
+    }
+
+    @Scheduled(
+            initialDelayString = "${shop.opening-hours.rebuild-delay:PT5M}",
+            fixedDelayString = "${shop.opening-hours.rebuild-delay:PT5M}"
+    )
+    public void rebuild() {
+        rebuildLock.lock();
+        try {
+            lock.lock();
+            try {
+                pending = new ArrayList<>();
+            } finally {
+                lock.unlock();
+            }
+
+            Map<Long, WeeklySchedule> scanned = new HashMap<>();
+            Map<WeeklySchedule, IdsBuilder> builders = new HashMap<>();
+            Map<WeeklySchedule, WeeklySchedule> interned = new HashMap<>();
+            long lastId = 0;
+            while (true) {
+                long after = lastId;
+                List<Long> ids = readTransaction.execute(tx -> shopRepository.findIdsAfter(after, PageRequest.of(0, batchSize)));
+                if (ids == null || ids.isEmpty()) {
+                    break;
+                }
+                readTransaction.executeWithoutResult(tx -> shopRepository.findWithOpeningHoursByIdIn(ids).forEach(shop -> {
+                    WeeklySchedule schedule = compile(shop);
+                    if (schedule != null) {
+                        WeeklySchedule shared = interned.computeIfAbsent(schedule, key -> key);
+                        scanned.put(shop.getId(), shared);
+                        builders.computeIfAbsent(shared, key -> new IdsBuilder()).add(shop.getId());
+                    }
+                }));
+                lastId = ids.get(ids.size() - 1);
+            }
+
+            Map<WeeklySchedule, Group> rebuilt = new HashMap<>();
+            builders.forEach((schedule, builder) -> rebuilt.put(schedule, Group.of(builder.toSortedArray())));
+            lock.lock();
+            try {
+                pending.forEach(change -> change.applyTo(scanned, rebuilt));
+                scheduleByShop = scanned;
+                groups = Collections.unmodifiableMap(rebuilt);
+                ready = true;
+            } finally {
+                lock.unlock();
+            }
+            log.info("Indexed the opening hours of {} shops in {} distinct schedules", scanned.size(), rebuilt.size());
+        } catch (RuntimeException e) {
+            log.error("Rebuild of the opening hours index failed", e);
+        } finally {
+            lock.lock();
+            try {
+                pending = null;
+            } finally {
+                lock.unlock();
+            }
+            rebuildLock.unlock();
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Index the opening hours of a saved shop once the transaction is committed.
+     */
+    public void update(Shop shop) {
+        Change change = new Change(shop.getId(), compile(shop));
+        afterCommit(() -> apply(List.of(change)));
+    }
+
+    /**
+     * Remove deleted shops once the transaction is committed.
+     */
+    public void removeAll(Collection<Long> shopIds) {
+        List<Change> changes = shopIds.stream().map(id -> new Change(id, null)).toList();
+        afterCommit(() -> apply(changes));
+    }
+
+    private void apply(List<Change> changes) {
+        lock.lock();
+        try {
+            Map<WeeklySchedule, Group> updated = new HashMap<>(groups);
+            changes.forEach(change -> change.applyTo(scheduleByShop, updated));
+            groups = Collections.unmodifiableMap(updated);
+            if (pending != null) {
+                pending.addAll(changes);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static void afterCommit(Runnable update) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    update.run();
+                }
+            });
+        } else {
+            update.run();
+        }
+    }
+
+    // Shops in vacations or without opening hours are never open
+    private static WeeklySchedule compile(Shop shop) {
+        if (shop.getInVacations()) {
+            return null;
+        }
+        WeeklySchedule schedule = WeeklySchedule.compile(shop.getOpeningHours());
+        return schedule.isEmpty() ? null : schedule;
+    }
+
+    // Smallest id having `rank` open ids lower or equal, by bisection on the ids
+    private static long idOfRank(List<Group> open, long rank) {
+        long low = 0;
+        long high = open.stream().mapToLong(Group::max).max().orElse(0);
+        while (low < high) {
+            long middle = low + (high - low) / 2;
+            long count = 0;
+            for (Group group : open) {
+                count += group.rank(middle);
+            }
+            if (count >= rank) {
+                high = middle;
+            } else {
+                low = middle + 1;
+            }
+        }
+        return low;
+    }
+
+    // First index of a value >= id
+    private static int lowerBound(long[] values, long id) {
+        int index = Arrays.binarySearch(values, id);
+        return index >= 0 ? index : -index - 1;
+    }
+
+    // First index of a value > id
+    private static int upperBound(long[] values, long id) {
+        int index = Arrays.binarySearch(values, id);
+        return index >= 0 ? index + 1 : -index - 1;
+    }
+
+    private static long[] inserted(long[] values, long id) {
+        int index = lowerBound(values, id);
+        long[] result = new long[values.length + 1];
+        System.arraycopy(values, 0, result, 0, index);
+        result[index] = id;
+        System.arraycopy(values, index, result, index + 1, values.length - index);
+        return result;
+    }
+
+    private static long[] removed(long[] values, int index) {
+        long[] result = new long[values.length - 1];
+        System.arraycopy(values, 0, result, 0, index);
+        System.arraycopy(values, index + 1, result, index, result.length - index);
+        return result;
+    }
+
+    /**
+     * A write of a shop: its new schedule, null when it is never open or deleted.
+     */
+    private record Change(long shopId, WeeklySchedule schedule) {
+        void applyTo(Map<Long, WeeklySchedule> scheduleByShop, Map<WeeklySchedule, Group> groups) {
+            WeeklySchedule previous = schedule == null
+                    ? scheduleByShop.remove(shopId)
+                    : scheduleByShop.put(shopId, schedule);
+            if (Objects.equals(previous, schedule)) {
+                return;
+            }
+            if (previous != null) {
+                Group group = groups.get(previous).without(shopId);
+                if (group.size() == 0) {
+                    groups.remove(previous);
+                } else {
+                    groups.put(previous, group);
+                }
+            }
+            if (schedule != null) {
+                groups.put(schedule, groups.getOrDefault(schedule, Group.EMPTY).with(shopId));
+            }
+        }
+    }
+
+    /**
+     * Sorted ids of the shops of a schedule: a compacted array, and the ids added and removed
+     * since, merged into it once they outnumber it (or exceed {@code MAX_CHANGES}). A write
+     * copies the changes, not the whole group.
+     */
+    private record Group(long[] base, long[] added, long[] removed) {
+        static final int MAX_CHANGES = 1024;
+
+        static final Group EMPTY = of(new long[0]);
+
+        static Group of(long[] sorted) {
+            return new Group(sorted, new long[0], new long[0]);
+        }
+
+        GroupIterator from(long id) {
+            return new GroupIterator(this, lowerBound(base, id), lowerBound(added, id), lowerBound(removed, id));
+        }
+
+        long max() {
+            long max = added.length == 0 ? 0 : added[added.length - 1];
+            // The largest ids of the base may be removed, an upper bound is enough
+            return base.length == 0 ? max : Math.max(max, base[base.length - 1]);
+        }
+
+        // Number of ids lower or equal to id
+        long rank(long id) {
+            return upperBound(base, id) - upperBound(removed, id) + upperBound(added, id);
+        }
+
+        int size() {
+            return base.length - removed.length + added.length;
+        }
+
+        // id is not in the group
+        Group with(long id) {
+            int index = Arrays.binarySearch(removed, id);
+            if (index >= 0) {
+                return new Group(base, added, OpeningHoursIndex.removed(removed, index));
+            }
+            return new Group(base, inserted(added, id), removed).compacted();
+        }
+
+        // id is in the group
+        Group without(long id) {
+            int index = Arrays.binarySearch(added, id);
+            if (index >= 0) {
+                return new Group(base, OpeningHoursIndex.removed(added, index), removed);
+            }
+            return new Group(base, added, inserted(removed, id)).compacted();
+        }
+
+        private Group compacted() {
+            if (added.length + removed.length <= Math.min(MAX_CHANGES, base.length)) {
+                return this;
+            }
+            long[] ids = new long[size()];
+            GroupIterator cursor = from(Long.MIN_VALUE);
+            for (int i = 0; i < ids.length; i++) {
+                ids[i] = cursor.next();
+            }
+            return of(ids);
+        }
+    }
+
+    /**
+     * Ascending iteration on the ids of a group, from a given id.
+     */
+    private static final class GroupIterator implements Comparable<GroupIterator> {
+        private final Group group;
+        private int addedIndex;
+        private int baseIndex;
+        private int removedIndex;
+
+        GroupIterator(Group group, int baseIndex, int addedIndex, int removedIndex) {
+            this.group = group;
+            this.baseIndex = baseIndex;
+            this.addedIndex = addedIndex;
+            this.removedIndex = removedIndex;
+            skipRemoved();
+        }
+
+        @Override
+        public int compareTo(GroupIterator other) {
+            return Long.compare(peek(), other.peek());
+        }
+
+        boolean hasNext() {
+            return baseIndex < group.base().length || addedIndex < group.added().length;
+        }
+
+        long next() {
+            long id;
+            if (addedIndex >= group.added().length
+                    || (baseIndex < group.base().length && group.base()[baseIndex] < group.added()[addedIndex])) {
+                id = group.base()[baseIndex++];
+                skipRemoved();
+            } else {
+                id = group.added()[addedIndex++];
+            }
+            return id;
+        }
+
+        private long peek() {
+            if (addedIndex >= group.added().length) {
+                return group.base()[baseIndex];
+            }
+            if (baseIndex >= group.base().length) {
+                return group.added()[addedIndex];
+            }
+            return Math.min(group.base()[baseIndex], group.added()[addedIndex]);
+        }
+
+        // The removed ids are a sorted subset of the base
+        private void skipRemoved() {
+            long[] base = group.base();
+            long[] removed = group.removed();
+            while (baseIndex < base.length && removedIndex < removed.length) {
+                if (removed[removedIndex] < base[baseIndex]) {
+                    removedIndex++;
+                } else if (removed[removedIndex] == base[baseIndex]) {
+                    baseIndex++;
+                    removedIndex++;
+                } else {
+                    break;
+                }
+            }
+        }
+    }
+
+    private static final class IdsBuilder {
+        private long[] ids = new long[8];
+        private int size;
+
+        void add(long id) {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            ids[size++] = id;
+        }
+
+        long[] toSortedArray() {
+            long[] sorted = Arrays.copyOf(ids, size);
+            // Batches are read by ascending ids, the shops of a batch in any order
+            Arrays.sort(sorted);
+            return sorted;
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package fr.fullstack.shopapp.service;
+
+import fr.fullstack.shopapp.model.OpeningHoursShop;
+import org.apache.coyote.BadRequestException;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Rules on the opening hours of a shop: the slots of a same day must not overlap.
+ */
+public final class OpeningHoursRules {
+    private OpeningHoursRules() {
+    }
+
+    public static void validate(List<OpeningHoursShop> openingHours) {
+        // Regrouper les horaires par jour
+        Map<Long, List<OpeningHoursShop>> openingHoursByDay = openingHours.stream()
+                .collect(Collectors.groupingBy(OpeningHoursShop::getDay));
+
+        // Vérifier les chevauchements pour chaque jour
+        openingHoursByDay.values().forEach(hours -> {
+                try {
+                    checkForOverlap(hours);
+                } catch (BadRequestException e) {
+                    throw new RuntimeException(e);
+                }
+            });
+    }
+
+    private static void checkForOverlap(List<OpeningHoursShop> dayOpeningHours) throws BadRequestException {
+        // Trier les horaires par heure d'ouverture pour simplifier la vérification des chevauchements
+        List<OpeningHoursShop> sortedHours = dayOpeningHours.stream()
+                .sorted(Comparator.comparing(OpeningHoursShop::getOpenAt))
+                .toList();
+
+        // Vérifier uniquement les horaires consécutifs
+        for (int i = 0; i < sortedHours.size() - 1; i++) {
+            OpeningHoursShop current = sortedHours.get(i);
+            OpeningHoursShop next = sortedHours.get(i + 1);
+
+            if (isOverlapping(current, next)) {
+                throw new BadRequestException(
+                        String.format("Les horaires d'ouverture se chevauchent pour le jour %d : %s et %s",
+                                current.getDay(), current, next)
+                );
+            }
+        }
+    }
+
+    private static boolean isOverlapping(OpeningHoursShop hours1, OpeningHoursShop hours2) {
+        // Un chevauchement existe si l'heure de fermeture du premier dépasse ou touche l'heure d'ouverture du second
+        return !hours1.getCloseAt().isBefore(hours2.getOpenAt());
+    }
+}
@@ -0,0 +1,172 @@
+package fr.fullstack.shopapp.service;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import fr.fullstack.shopapp.repository.jpa.ShopRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.server.ResponseStatusException;
+
+import javax.sql.DataSource;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.sql.Array;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Export of the whole catalog of a shop, streamed from a server-side cursor: rows are read
+ * {@code shop.products.export-fetch-size} at a time and written as they come, without loading any
+ * entity.
+ */
+@Service
+public class ProductExportService {
+
+    public enum Format {
+        CSV, NDJSON
+    }
+
+    // One row per product, in the order of idx_products_shop_id so that no sort is needed
+    private static final String EXPORT_QUERY = "SELECT p.id, p.price, "
+            + "MAX(lp.name) FILTER (WHERE lp.locale = 'FR') AS name_fr, "
+            + "MAX(lp.description) FILTER (WHERE lp.locale = 'FR') AS description_fr, "
+            + "MAX(lp.name) FILTER (WHERE lp.locale = 'EN') AS name_en, "
+            + "MAX(lp.description) FILTER (WHERE lp.locale = 'EN') AS description_en, "
+            + "(SELECT ARRAY_AGG(pc.category_id ORDER BY pc.category_id) FROM products_categories pc "
+            + "WHERE pc.product_id = p.id) AS category_ids "
+            + "FROM products p "
+            + "LEFT JOIN products_localized_product plp ON plp.product_id = p.id "
+            + "LEFT JOIN localized_product lp ON lp.id = plp.localized_product_id "
+            + "WHERE p.shop_id = ? "
+            + "GROUP BY p.id, p.price "
+            + "ORDER BY p.id";
+
+    private static final String CSV_HEADER = "id,price,nameFr,descriptionFr,nameEn,descriptionEn,categoryIds";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ObjectMapper objectMapper;
+    private final TransactionTemplate readTransaction;
+    private final ShopRepository shopRepository;
+
+    public ProductExportService(
+            DataSource dataSource,
+            ObjectMapper objectMapper,
+            PlatformTransactionManager transactionManager,
+            ShopRepository shopRepository,
+            @Value("${shop.products.export-fetch-size:500}") int fetchSize
+    ) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.jdbcTemplate.setFetchSize(fetchSize);
+        this.objectMapper = objectMapper;
+        this.shopRepository = shopRepository;
+        // PostgreSQL only uses a cursor for the fetch size outside of auto-commit
+        this.readTransaction = new TransactionTemplate(transactionManager);
+        this.readTransaction.setReadOnly(true);
+    }
+
+    public void checkShopExists(long shopId) {
+        if (!shopRepository.existsById(shopId)) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Shop with id " + shopId + " not found");
+        }
+    }
+
+    public void export(long shopId, Format format, OutputStream out) throws IOException {
+        try {
+            if (format == Format.CSV) {
+                exportCsv(shopId, out);
+            } else {
+                exportNdjson(shopId, out);
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private void exportCsv(long shopId, OutputStream out) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        writer.write(CSV_HEADER);
+        writer.write('\n');
+        stream(shopId, rs -> {
+            writer.write(String.valueOf(rs.getLong("id")));
+            writer.write(',');
+            writer.write(String.valueOf(rs.getFloat("price")));
+            for (String column : new String[]{"name_fr", "description_fr", "name_en", "description_en"}) {
+                writer.write(',');
+                writer.write(csvField(rs.getString(column)));
+            }
+            writer.write(',');
+            Long[] categoryIds = categoryIds(rs);
+            for (int i = 0; i < categoryIds.length; i++) {
+                if (i > 0) {
+                    writer.write(';');
+                }
+                writer.write(String.valueOf(categoryIds[i]));
+            }
+            writer.write('\n');
+        });
+        writer.flush();
+    }
+
+    private void exportNdjson(long shopId, OutputStream out) throws IOException {
+        JsonGenerator generator = objectMapper.getFactory().createGenerator(out);
+        generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        stream(shopId, rs -> {
+            generator.writeStartObject();
+            generator.writeNumberField("id", rs.getLong("id"));
+            generator.writeNumberField("price", rs.getFloat("price"));
+            generator.writeStringField("nameFr", rs.getString("name_fr"));
+            generator.writeStringField("descriptionFr", rs.getString("description_fr"));
+            generator.writeStringField("nameEn", rs.getString("name_en"));
+            generator.writeStringField("descriptionEn", rs.getString("description_en"));
+            generator.writeArrayFieldStart("categoryIds");
+            for (Long categoryId : categoryIds(rs)) {
+                generator.writeNumber(categoryId);
+            }
+            generator.writeEndArray();
+            generator.writeEndObject();
+            generator.writeRaw('\n');
+        });
+        generator.close();
+    }
+
+    private void stream(long shopId, RowWriter rowWriter) {
+        readTransaction.executeWithoutResult(tx -> jdbcTemplate.query(EXPORT_QUERY, (RowCallbackHandler) rs -> {
+            try {
+                rowWriter.write(rs);
+            } catch (IOException e) {
+                // Client gone: stop reading the cursor
+                throw new UncheckedIOException(e);
+            }
+        }, shopId));
+    }
+
+    private static Long[] categoryIds(ResultSet rs) throws SQLException {
+        Array array = rs.getArray("category_ids");
+        return array == null ? new Long[0] : (Long[]) array.getArray();
+    }
+
+    private static String csvField(String value) {
+        if (value == null) {
+            return "";
+        }
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+            return value;
+        }
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+
+    @FunctionalInterface
+    private interface RowWriter {
+        void write(ResultSet rs) throws SQLException, IOException;
+    }
+}
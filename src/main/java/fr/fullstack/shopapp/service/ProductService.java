@@ -1,18 +1,48 @@
 package fr.fullstack.shopapp.service;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import fr.fullstack.shopapp.config.CacheConfig;
+import fr.fullstack.shopapp.dto.BulkItemResult;
+import fr.fullstack.shopapp.dto.CursorPage;
+import fr.fullstack.shopapp.dto.LocalizedProductView;
+import fr.fullstack.shopapp.model.Category;
+import fr.fullstack.shopapp.model.Locale;
 import fr.fullstack.shopapp.model.LocalizedProduct;
 import fr.fullstack.shopapp.model.Product;
+import fr.fullstack.shopapp.model.Shop;
 import fr.fullstack.shopapp.repository.jpa.ProductRepository;
+import fr.fullstack.shopapp.repository.jpa.ShopRepository;
+import fr.fullstack.shopapp.service.ListingResponseCache.Listing;
+import fr.fullstack.shopapp.util.Cursor;
+import fr.fullstack.shopapp.util.ETags;
+import io.micrometer.observation.annotation.Observed;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.annotation.Cacheable;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.PersistenceContext;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
 
+@Observed(name = "shop.service")
 @Service
 public class ProductService {
     @PersistenceContext
@@ -21,42 +51,140 @@ public class ProductService {
     @Autowired
     private ProductRepository productRepository;
 
+    @Autowired
+    private EntityCacheInvalidator entityCacheInvalidator;
+
+    // The shops listing shows the counters of the shops
+    @Autowired
+    private ListingResponseCache listingResponseCache;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private ShopIndexOutboxService shopIndexOutboxService;
+
+    @Autowired
+    private ShopRepository shopRepository;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private Validator validator;
+
+    @Value("${shop.products.bulk-chunk-size:500}")
+    private int bulkChunkSize;
+
     @Transactional
     public Product createProduct(Product product) throws Exception {
-        // Check that product exists at least in french and check name's length
-        try {
-            checkLocalizedProducts(product);
-        } catch (Exception e) {
-            throw new Exception(e.getMessage());
-        }
+        return saveProduct(product, null);
+    }
 
-        try {
-            Product newProduct = productRepository.save(product);
-            em.flush();
-            em.refresh(newProduct);
-            return newProduct;
-        } catch (Exception e) {
-            throw new Exception(e.getMessage());
+    /**
+     * Create the products read from the iterator, one transaction per chunk of
+     * {@code shop.products.bulk-chunk-size} valid products. The result of each product is
+     * returned in the order of the input.
+     */
+    public List<BulkItemResult> createProducts(Iterator<Product> products) {
+        List<BulkItemResult> results = new ArrayList<>();
+        Map<Integer, Product> chunk = new HashMap<>();
+        int index = 0;
+        while (true) {
+            Product product;
+            try {
+                if (!products.hasNext()) {
+                    break;
+                }
+                product = products.next();
+            } catch (RuntimeException e) {
+                // The input cannot be read any further
+                results.add(BulkItemResult.invalid(index, e.getMessage()));
+                break;
+            }
+
+            String error = getValidationError(product);
+            if (error != null) {
+                results.add(BulkItemResult.invalid(index, error));
+            } else {
+                chunk.put(index, product);
+            }
+            index++;
+
+            if (chunk.size() == bulkChunkSize) {
+                results.addAll(insertChunk(chunk));
+                chunk.clear();
+            }
         }
+        results.addAll(insertChunk(chunk));
+
+        results.sort(Comparator.comparingInt(BulkItemResult::getIndex));
+        return results;
     }
 
+    @Transactional
     public void deleteProductById(long id) throws Exception {
         try {
-            getProduct(id);
+            Product product = getProduct(id);
+            Long shopId = getShopId(product);
+            entityCacheInvalidator.evictProduct(id);
             productRepository.deleteById(id);
+            updateShopCounters(shopId, null);
         } catch (Exception e) {
             throw new Exception(e.getMessage());
         }
     }
 
+    @Cacheable(cacheNames = CacheConfig.PRODUCTS, key = "#id")
+    @Transactional(readOnly = true)
     public Product getProductById(long id) throws Exception {
         try {
-            return getProduct(id);
+            // The cache holds a detached copy, read by concurrent requests outside of any session:
+            // never the managed entity, whose lazy collections stay bound to this persistence context
+            return objectMapper.convertValue(getProduct(id), Product.class);
         } catch (Exception e) {
             throw new Exception(e.getMessage());
         }
     }
 
+    @Transactional(readOnly = true)
+    public Optional<String> getProductETag(long id) {
+        return productRepository.findVersionTagById(id).map(versionTag -> ETags.product(id, versionTag));
+    }
+
+    @Transactional(readOnly = true)
+    public LocalizedProductView getProductView(long id, Locale locale) throws Exception {
+        Optional<LocalizedProductView> product = productRepository.findViewById(id, locale.name());
+        if (!product.isPresent()) {
+            throw new Exception("Product with id " + id + " not found");
+        }
+        return product.get();
+    }
+
+    @Transactional(readOnly = true)
+    public Optional<String> getProductViewETag(long id, Locale locale) {
+        return productRepository.findVersionById(id).map(version -> ETags.productView(id, version, locale));
+    }
+
+    @Transactional(readOnly = true)
+    public Page<LocalizedProductView> getShopProductViewList(
+            Optional<Long> shopId,
+            Optional<Long> categoryId,
+            Locale locale,
+            Pageable pageable
+    ) {
+        if (shopId.isPresent() && categoryId.isPresent()) {
+            return productRepository.findViewsByShopAndCategory(shopId.get(), categoryId.get(), locale.name(), pageable);
+        }
+
+        if (shopId.isPresent()) {
+            return productRepository.findViewsByShop(shopId.get(), locale.name(), pageable);
+        }
+
+        return productRepository.findViews(locale.name(), pageable);
+    }
+
+    @Transactional(readOnly = true)
     public Page<Product> getShopProductList(Optional<Long> shopId, Optional<Long> categoryId, Pageable pageable) {
         if (shopId.isPresent() && categoryId.isPresent()) {
             return productRepository.findByShopAndCategory(shopId.get(), categoryId.get(), pageable);
@@ -69,11 +197,37 @@ public class ProductService {
         return productRepository.findByOrderByIdAsc(pageable);
     }
 
+    @Transactional(readOnly = true)
+    public CursorPage<Product> getShopProductListAfter(
+            Optional<Long> shopId,
+            Optional<Long> categoryId,
+            Optional<Cursor> cursor,
+            int size
+    ) {
+        long lastId = cursor.map(c -> {
+            c.getKey("id");
+            return c.getId();
+        }).orElse(0L);
+        Pageable limit = PageRequest.of(0, size + 1);
+
+        List<Product> products;
+        if (shopId.isPresent() && categoryId.isPresent()) {
+            products = productRepository.findByShopAndCategoryAfter(shopId.get(), categoryId.get(), lastId, limit);
+        } else if (shopId.isPresent()) {
+            products = productRepository.findByShopAfter(shopId.get(), lastId, limit);
+        } else {
+            products = productRepository.findAfter(lastId, limit);
+        }
+
+        return CursorPage.of(products, size, product -> new Cursor("id", "", product.getId()));
+    }
+
     @Transactional
     public Product updateProduct(Product product) throws Exception {
         try {
-            getProduct(product.getId());
-            return this.createProduct(product);
+            Long previousShopId = getShopId(getProduct(product.getId()));
+            entityCacheInvalidator.evictProduct(product.getId());
+            return saveProduct(product, previousShopId);
         } catch (Exception e) {
             throw new Exception(e.getMessage());
         }
@@ -89,6 +243,124 @@ public class ProductService {
         }
     }
 
+    private String getValidationError(Product product) {
+        Set<ConstraintViolation<Product>> violations = validator.validate(product);
+        if (!violations.isEmpty()) {
+            return violations.stream().map(ConstraintViolation::getMessage).collect(Collectors.joining("; "));
+        }
+        try {
+            checkLocalizedProducts(product);
+        } catch (Exception e) {
+            return e.getMessage();
+        }
+        return null;
+    }
+
+    private Long getShopId(Product product) {
+        return product.getShop() == null ? null : product.getShop().getId();
+    }
+
+    private Product saveProduct(Product product, Long previousShopId) throws Exception {
+        // Check that product exists at least in french and check name's length
+        try {
+            checkLocalizedProducts(product);
+        } catch (Exception e) {
+            throw new Exception(e.getMessage());
+        }
+
+        try {
+            Product newProduct = productRepository.save(product);
+            em.flush();
+            updateShopCounters(previousShopId, getShopId(newProduct));
+            productRepository.incrementVersion(newProduct.getId());
+            em.refresh(newProduct);
+            if (newProduct.getShop() != null) {
+                // The counters were changed by SQL, reload them
+                em.refresh(newProduct.getShop());
+            }
+            return newProduct;
+        } catch (Exception e) {
+            throw new Exception(e.getMessage());
+        }
+    }
+
+    private List<BulkItemResult> insertChunk(Map<Integer, Product> chunk) {
+        if (chunk.isEmpty()) {
+            return List.of();
+        }
+
+        try {
+            return transactionTemplate.execute(tx -> persistChunk(chunk));
+        } catch (Exception e) {
+            if (chunk.size() == 1) {
+                Map.Entry<Integer, Product> item = chunk.entrySet().iterator().next();
+                return List.of(BulkItemResult.failed(item.getKey(), e.getMessage()));
+            }
+            // Isolate the products responsible for the failure
+            List<BulkItemResult> results = new ArrayList<>();
+            chunk.forEach((index, product) -> results.addAll(insertChunk(Map.of(index, product))));
+            return results;
+        }
+    }
+
+    private List<BulkItemResult> persistChunk(Map<Integer, Product> chunk) {
+        Map<Long, Long> nbProductsByShop = new HashMap<>();
+        chunk.values().forEach(product -> {
+            // Only new rows, referencing existing shops and categories
+            product.setId(0);
+            product.getLocalizedProducts().forEach(localizedProduct -> localizedProduct.setId(0));
+            if (product.getShop() != null) {
+                long shopId = product.getShop().getId();
+                product.setShop(em.getReference(Shop.class, shopId));
+                nbProductsByShop.merge(shopId, 1L, Long::sum);
+            }
+            List<Category> categories = new ArrayList<>();
+            product.getCategories().forEach(category -> categories.add(em.getReference(Category.class, category.getId())));
+            product.setCategories(categories);
+            em.persist(product);
+        });
+        em.flush();
+
+        nbProductsByShop.forEach(shopRepository::incrementNbProducts);
+        if (!nbProductsByShop.isEmpty()) {
+            shopRepository.refreshNbCategories(nbProductsByShop.keySet());
+            shopIndexOutboxService.enqueueAll(nbProductsByShop.keySet());
+            entityCacheInvalidator.evictShops(nbProductsByShop.keySet());
+            listingResponseCache.invalidate(Listing.SHOPS);
+        }
+
+        List<BulkItemResult> results = new ArrayList<>();
+        chunk.forEach((index, product) -> results.add(BulkItemResult.created(index, product.getId())));
+        em.clear();
+        return results;
+    }
+
+    private void updateShopCounters(Long previousShopId, Long shopId) {
+        if (!Objects.equals(previousShopId, shopId)) {
+            if (previousShopId != null) {
+                shopRepository.incrementNbProducts(previousShopId, -1);
+            }
+            if (shopId != null) {
+                shopRepository.incrementNbProducts(shopId, 1);
+            }
+        }
+
+        // Categories may have changed even if the shop did not
+        Set<Long> shopIds = new HashSet<>();
+        if (previousShopId != null) {
+            shopIds.add(previousShopId);
+        }
+        if (shopId != null) {
+            shopIds.add(shopId);
+        }
+        if (!shopIds.isEmpty()) {
+            shopRepository.refreshNbCategories(shopIds);
+            shopIndexOutboxService.enqueueAll(shopIds);
+            entityCacheInvalidator.evictShops(shopIds);
+            listingResponseCache.invalidate(Listing.SHOPS);
+        }
+    }
+
     private Product getProduct(Long id) throws Exception {
         Optional<Product> product = productRepository.findById(id);
         if (!product.isPresent()) {
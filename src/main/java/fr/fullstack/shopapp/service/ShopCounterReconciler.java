@@ -0,0 +1,86 @@
+package fr.fullstack.shopapp.service;
+
+import fr.fullstack.shopapp.config.AdvisoryLocks;
+import fr.fullstack.shopapp.repository.jpa.ShopRepository;
+import fr.fullstack.shopapp.service.ListingResponseCache.Listing;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+
+/**
+ * Recomputes nbProducts and nbCategories of every shop, one id range per transaction, to repair
+ * counters changed outside of the services (SQL scripts, imports...). Also run at startup when
+ * the counters were never computed (columns just added to an existing database).
+ */
+@Service
+public class ShopCounterReconciler {
+
+    private static final Logger log = LoggerFactory.getLogger(ShopCounterReconciler.class);
+
+    private final AdvisoryLocks advisoryLocks;
+    private final int batchSize;
+    private final ListingResponseCache listingResponseCache;
+    private final ShopRepository shopRepository;
+    private final TransactionTemplate transactionTemplate;
+
+    public ShopCounterReconciler(
+            ShopRepository shopRepository,
+            ListingResponseCache listingResponseCache,
+            PlatformTransactionManager transactionManager,
+            AdvisoryLocks advisoryLocks,
+            @Value("${shop.counters.reconcile-batch-size:5000}") int batchSize
+    ) {
+        this.advisoryLocks = advisoryLocks;
+        this.shopRepository = shopRepository;
+        this.listingResponseCache = listingResponseCache;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.batchSize = batchSize;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    public void backfill() {
+        // Blocks the readiness, and runs before the search index is built from the counters
+        if (shopRepository.existsUncountedProducts()) {
+            log.info("Shops with products but no nbProducts, computing the counters");
+            reconcile();
+        }
+    }
+
+    @Scheduled(cron = "${shop.counters.reconcile-cron:0 0 3 * * *}")
+    public void reconcile() {
+        // Each instance runs the cron and the backfill, a single one recomputes the counters
+        if (!advisoryLocks.runExclusively("shop-counters-reconcile", this::reconcileAll)) {
+            log.info("Shop counters reconciliation skipped, running on another instance");
+        }
+    }
+
+    private void reconcileAll() {
+        long lastId = 0;
+        long fixed = 0;
+        List<Long> ids = shopRepository.findIdsAfter(lastId, PageRequest.of(0, batchSize));
+        while (!ids.isEmpty()) {
+            long from = lastId;
+            long to = ids.get(ids.size() - 1);
+            fixed += transactionTemplate.execute(tx -> shopRepository.reconcileCounters(from, to));
+            lastId = to;
+            ids = shopRepository.findIdsAfter(lastId, PageRequest.of(0, batchSize));
+        }
+
+        if (fixed > 0) {
+            listingResponseCache.invalidate(Listing.SHOPS);
+        }
+        log.info("Shop counters reconciled, {} shops fixed", fixed);
+    }
+}
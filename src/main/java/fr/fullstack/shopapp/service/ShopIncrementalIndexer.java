@@ -0,0 +1,142 @@
+package fr.fullstack.shopapp.service;
+
+import fr.fullstack.shopapp.config.SchemaMigrations;
+import fr.fullstack.shopapp.document.ShopDocument;
+import fr.fullstack.shopapp.model.Shop;
+import fr.fullstack.shopapp.model.SyncStatus;
+import fr.fullstack.shopapp.repository.jpa.ShopRepository;
+import fr.fullstack.shopapp.repository.jpa.SyncStatusRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Indexes the shops updated since the watermark saved in {@link SyncStatus}, whatever made the
+ * change: the services, SQL scripts or imports (the updated_at column is set by triggers).
+ * <p>
+ * Shops are read by ascending updated_at in chunks of {@code shop.index.incremental.batch-size}
+ * and sent with the _bulk API. Only the shops updated more than
+ * {@code shop.index.incremental.commit-lag} ago are read, so that a transaction still running
+ * when its shop is stamped has committed before the watermark moves past it. Shops rejected by
+ * Elasticsearch are handed to the outbox, which retries them.
+ * <p>
+ * Disabled when the triggers could not be installed at startup ({@link SchemaMigrations}): the
+ * watermark would move past changes it never sees.
+ */
+@Service
+public class ShopIncrementalIndexer {
+
+    private static final Logger log = LoggerFactory.getLogger(ShopIncrementalIndexer.class);
+
+    private final int batchSize;
+    private final Duration commitLag;
+    private final boolean enabled;
+    private final ShopIndexer shopIndexer;
+    private final ShopIndexOutboxService shopIndexOutboxService;
+    private final ShopRepository shopRepository;
+    private final SyncStatusRepository syncStatusRepository;
+    private final TransactionTemplate readTransaction;
+    private final TransactionTemplate transactionTemplate;
+
+    public ShopIncrementalIndexer(
+            ShopIndexer shopIndexer,
+            ShopIndexOutboxService shopIndexOutboxService,
+            ShopRepository shopRepository,
+            SyncStatusRepository syncStatusRepository,
+            PlatformTransactionManager transactionManager,
+            SchemaMigrations schemaMigrations,
+            @Value("${shop.index.incremental.batch-size:500}") int batchSize,
+            @Value("${shop.index.incremental.commit-lag:1m}") Duration commitLag
+    ) {
+        this.shopIndexer = shopIndexer;
+        this.shopIndexOutboxService = shopIndexOutboxService;
+        this.shopRepository = shopRepository;
+        this.syncStatusRepository = syncStatusRepository;
+        this.batchSize = batchSize;
+        this.commitLag = commitLag;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.readTransaction = new TransactionTemplate(transactionManager);
+        this.readTransaction.setReadOnly(true);
+        this.enabled = schemaMigrations.hasUpdatedAtTriggers();
+        if (!enabled) {
+            log.warn("Incremental reindex of the shops disabled, the triggers of shops.updated_at are missing");
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${shop.index.incremental.poll-delay:PT30S}")
+    public void indexUpdatedShops() {
+        if (!enabled) {
+            return;
+        }
+
+        try {
+            String indexName = shopIndexer.getIndexCoordinates().getIndexName();
+            Optional<SyncStatus> found = syncStatusRepository.findFirstByIndexNameOrderByIdDesc(indexName);
+            // The full reindex picks up the changes made while it runs
+            if (found.isEmpty() || !found.get().isSyncCompleted()) {
+                return;
+            }
+
+            SyncStatus status = found.get();
+            Instant until = Instant.now().minus(commitLag);
+            if (status.getWatermark() == null) {
+                // Index built before the watermarks: the reconciliation repairs the older changes
+                status.setWatermark(until);
+                syncStatusRepository.save(status);
+                return;
+            }
+            if (!until.isAfter(status.getWatermark())) {
+                return;
+            }
+
+            long indexed = indexUpdatedBetween(status.getWatermark(), until);
+            status.setWatermark(until);
+            syncStatusRepository.save(status);
+            if (indexed > 0) {
+                log.info("Indexed {} shops updated until {}", indexed, until);
+            }
+        } catch (Exception e) {
+            // The watermark is kept, the next run starts over from it
+            log.error("Incremental reindex of the shops failed", e);
+        }
+    }
+
+    private long indexUpdatedBetween(Instant watermark, Instant until) {
+        long indexed = 0;
+        // Long.MAX_VALUE: the shops updated at the watermark itself were indexed by the last run
+        Chunk chunk = new Chunk(watermark, Long.MAX_VALUE, List.of());
+        do {
+            Chunk previous = chunk;
+            chunk = readTransaction.execute(tx -> {
+                List<Shop> shops = shopRepository.findUpdatedAfter(
+                        previous.lastUpdatedAt(), previous.lastId(), until, PageRequest.of(0, batchSize));
+                if (shops.isEmpty()) {
+                    return new Chunk(previous.lastUpdatedAt(), previous.lastId(), List.of());
+                }
+                Shop last = shops.get(shops.size() - 1);
+                return new Chunk(last.getUpdatedAt(), last.getId(), shopIndexer.toDocuments(shops));
+            });
+
+            Set<Long> failed = shopIndexer.bulkIndex(chunk.shops());
+            if (!failed.isEmpty()) {
+                transactionTemplate.executeWithoutResult(tx -> shopIndexOutboxService.enqueueAll(failed));
+            }
+            indexed += chunk.shops().size() - failed.size();
+        } while (chunk.shops().size() == batchSize);
+        return indexed;
+    }
+
+    private record Chunk(Instant lastUpdatedAt, long lastId, List<ShopDocument> shops) {
+    }
+}
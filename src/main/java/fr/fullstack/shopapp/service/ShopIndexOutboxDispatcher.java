@@ -0,0 +1,174 @@
+package fr.fullstack.shopapp.service;
+
+import fr.fullstack.shopapp.document.ShopDocument;
+import fr.fullstack.shopapp.model.Shop;
+import fr.fullstack.shopapp.model.ShopIndexOutbox;
+import fr.fullstack.shopapp.repository.jpa.ShopIndexOutboxRepository;
+import fr.fullstack.shopapp.repository.jpa.ShopRepository;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+
+/**
+ * Drains the shop index outbox into Elasticsearch.
+ * <p>
+ * Each batch coalesces the entries of a same shop into a single operation: the shop is indexed as
+ * it is in the database, or deleted from the index when it no longer exists. The batch is claimed
+ * in a short transaction which counts the attempt and leases the entries, so the bulk requests to
+ * Elasticsearch hold neither row locks nor a connection; a dispatcher dying in between leaves its
+ * entries to be claimed again once the lease expires. Entries whose operation failed are retried
+ * with an exponential backoff, and parked after {@code max-attempts}.
+ */
+@Service
+public class ShopIndexOutboxDispatcher {
+
+    private static final Logger log = LoggerFactory.getLogger(ShopIndexOutboxDispatcher.class);
+
+    private final int batchSize;
+    private final AtomicLong depth = new AtomicLong();
+    private final Duration lease;
+    private final int maxAttempts;
+    private final AtomicReference<Instant> oldestCreatedAt = new AtomicReference<>();
+    private final AtomicLong parked = new AtomicLong();
+    private final Duration retryBaseDelay;
+    private final Duration retryMaxDelay;
+    private final ShopIndexer shopIndexer;
+    private final ShopIndexOutboxRepository shopIndexOutboxRepository;
+    private final ShopRepository shopRepository;
+    private final TransactionTemplate transactionTemplate;
+
+    public ShopIndexOutboxDispatcher(
+            ShopIndexer shopIndexer,
+            ShopIndexOutboxRepository shopIndexOutboxRepository,
+            ShopRepository shopRepository,
+            PlatformTransactionManager transactionManager,
+            MeterRegistry meterRegistry,
+            @Value("${shop.index.outbox.batch-size:500}") int batchSize,
+            @Value("${shop.index.outbox.lease:PT5M}") Duration lease,
+            @Value("${shop.index.outbox.max-attempts:20}") int maxAttempts,
+            @Value("${shop.index.outbox.retry-base-delay:1s}") Duration retryBaseDelay,
+            @Value("${shop.index.outbox.retry-max-delay:5m}") Duration retryMaxDelay
+    ) {
+        this.shopIndexer = shopIndexer;
+        this.shopIndexOutboxRepository = shopIndexOutboxRepository;
+        this.shopRepository = shopRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.batchSize = batchSize;
+        this.lease = lease;
+        this.maxAttempts = maxAttempts;
+        this.retryBaseDelay = retryBaseDelay;
+        this.retryMaxDelay = retryMaxDelay;
+
+        Gauge.builder("shop.index.outbox.depth", depth, AtomicLong::get)
+                .description("Number of shop changes waiting to be indexed")
+                .register(meterRegistry);
+        Gauge.builder("shop.index.outbox.oldest.age", oldestCreatedAt, this::ageInSeconds)
+                .description("Age of the oldest shop change waiting to be indexed")
+                .baseUnit("seconds")
+                .register(meterRegistry);
+        Gauge.builder("shop.index.outbox.parked", parked, AtomicLong::get)
+                .description("Number of shop changes no longer retried after too many failures")
+                .register(meterRegistry);
+    }
+
+    @Scheduled(fixedDelayString = "${shop.index.outbox.poll-delay:PT1S}")
+    public void dispatch() {
+        try {
+            int dispatched;
+            do {
+                dispatched = dispatchBatch();
+            } while (dispatched == batchSize);
+        } catch (Exception e) {
+            log.error("Shop index outbox dispatch failed", e);
+        } finally {
+            depth.set(shopIndexOutboxRepository.countByParkedAtIsNull());
+            parked.set(shopIndexOutboxRepository.countByParkedAtIsNotNull());
+            oldestCreatedAt.set(shopIndexOutboxRepository.findOldestCreatedAt());
+        }
+    }
+
+    private double ageInSeconds(AtomicReference<Instant> oldest) {
+        Instant createdAt = oldest.get();
+        return createdAt == null ? 0 : Duration.between(createdAt, Instant.now()).toMillis() / 1000.0;
+    }
+
+    private int dispatchBatch() {
+        Batch batch = transactionTemplate.execute(tx -> claimBatch());
+        if (batch == null) {
+            return 0;
+        }
+
+        // Outside of any transaction
+        Set<Long> failed = new HashSet<>(shopIndexer.bulkIndex(batch.documents()));
+        failed.addAll(shopIndexer.bulkDelete(batch.deleted()));
+
+        transactionTemplate.executeWithoutResult(tx -> complete(batch.entries(), failed));
+        return batch.entries().size();
+    }
+
+    private Batch claimBatch() {
+        List<ShopIndexOutbox> entries = shopIndexOutboxRepository.lockDue(Instant.now(), batchSize);
+        if (entries.isEmpty()) {
+            return null;
+        }
+
+        // Left to the other dispatchers until the lease expires, even once the lock is released
+        Instant leaseEnd = Instant.now().plus(lease);
+        entries.forEach(entry -> {
+            entry.setAttempts(entry.getAttempts() + 1);
+            entry.setNextAttemptAt(leaseEnd);
+        });
+
+        Set<Long> shopIds = entries.stream().map(ShopIndexOutbox::getShopId).collect(Collectors.toSet());
+        List<Shop> shops = shopRepository.findAllById(shopIds);
+        Set<Long> deleted = new HashSet<>(shopIds);
+        shops.forEach(shop -> deleted.remove(shop.getId()));
+        return new Batch(entries, shopIndexer.toDocuments(shops), deleted);
+    }
+
+    private void complete(List<ShopIndexOutbox> entries, Set<Long> failed) {
+        List<Long> done = new ArrayList<>();
+        List<Long> retried = new ArrayList<>();
+        entries.forEach(entry -> (failed.contains(entry.getShopId()) ? retried : done).add(entry.getId()));
+        shopIndexOutboxRepository.deleteAllByIdInBatch(done);
+        shopIndexOutboxRepository.findAllById(retried).forEach(this::scheduleRetry);
+    }
+
+    private void scheduleRetry(ShopIndexOutbox entry) {
+        int attempts = entry.getAttempts();
+        if (attempts >= maxAttempts) {
+            entry.setParkedAt(Instant.now());
+            log.error("Shop {} not indexed after {} attempts, its outbox entry {} is parked",
+                    entry.getShopId(), attempts, entry.getId());
+            return;
+        }
+
+        Duration delay = retryBaseDelay.multipliedBy(1L << Math.min(attempts - 1, 20));
+        if (delay.compareTo(retryMaxDelay) > 0) {
+            delay = retryMaxDelay;
+        }
+        entry.setNextAttemptAt(Instant.now().plus(delay));
+        if (attempts % 10 == 0) {
+            log.warn("Shop {} still not indexed after {} attempts", entry.getShopId(), attempts);
+        }
+    }
+
+    private record Batch(List<ShopIndexOutbox> entries, List<ShopDocument> documents, Set<Long> deleted) {
+    }
+}
@@ -0,0 +1,29 @@
+package fr.fullstack.shopapp.service;
+
+import fr.fullstack.shopapp.model.ShopIndexOutbox;
+import fr.fullstack.shopapp.repository.jpa.ShopIndexOutboxRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Collection;
+
+@Service
+public class ShopIndexOutboxService {
+    @Autowired
+    private ShopIndexOutboxRepository shopIndexOutboxRepository;
+
+    /**
+     * Record that the shop must be (re)indexed. Must be called in the transaction of the change.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void enqueue(long shopId) {
+        shopIndexOutboxRepository.save(new ShopIndexOutbox(shopId));
+    }
+
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void enqueueAll(Collection<Long> shopIds) {
+        shopIndexOutboxRepository.saveAll(shopIds.stream().map(ShopIndexOutbox::new).toList());
+    }
+}
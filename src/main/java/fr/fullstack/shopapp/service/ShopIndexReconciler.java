@@ -0,0 +1,262 @@
+package fr.fullstack.shopapp.service;
+
+import co.elastic.clients.json.JsonData;
+import fr.fullstack.shopapp.config.AdvisoryLocks;
+import fr.fullstack.shopapp.document.ShopDocument;
+import fr.fullstack.shopapp.repository.jpa.ShopRepository;
+import fr.fullstack.shopapp.repository.jpa.ShopRepository.SegmentChecksum;
+import fr.fullstack.shopapp.repository.jpa.ShopRepository.ShopFingerprint;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.elasticsearch.client.elc.NativeQuery;
+import org.springframework.data.elasticsearch.core.ElasticsearchOperations;
+import org.springframework.data.elasticsearch.core.SearchHit;
+import org.springframework.data.elasticsearch.core.SearchHitsIterator;
+import org.springframework.data.elasticsearch.core.query.FetchSourceFilterBuilder;
+import org.springframework.data.elasticsearch.core.query.Query;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.DigestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+
+/**
+ * Repairs the drift between the shops table and the search index.
+ * <p>
+ * Shops are compared by id range: the database returns a checksum of the fingerprints of a
+ * segment, the index the fingerprints stored in its documents. Only the segments whose checksums
+ * differ are compared shop by shop, and only the missing or outdated documents are indexed again.
+ * The index is queried by the same id range, so that the documents of the shops deleted from the
+ * segment, or past the last shop, are found and deleted. Documents indexed before their numeric id
+ * ({@link ShopDocument#getShopId()}) are outside of every range: they look missing and are indexed
+ * again, and those of deleted shops are looked for when the index holds more documents than the
+ * table.
+ */
+@Service
+public class ShopIndexReconciler {
+
+    private static final Logger log = LoggerFactory.getLogger(ShopIndexReconciler.class);
+
+    private static final String FINGERPRINT = "fingerprint";
+
+    private static final String SHOP_ID = "shopId";
+
+    private final AdvisoryLocks advisoryLocks;
+    private final Map<Drift, Counter> driftFound;
+    private final Map<Drift, Counter> driftRepaired;
+    private final int segmentSize;
+    private final ElasticsearchOperations elasticsearchOperations;
+    private final ShopIndexer shopIndexer;
+    private final ShopReindexService shopReindexService;
+    private final ShopRepository shopRepository;
+    private final TransactionTemplate readTransaction;
+
+    public ShopIndexReconciler(
+            ElasticsearchOperations elasticsearchOperations,
+            ShopIndexer shopIndexer,
+            ShopReindexService shopReindexService,
+            ShopRepository shopRepository,
+            PlatformTransactionManager transactionManager,
+            AdvisoryLocks advisoryLocks,
+            MeterRegistry meterRegistry,
+            @Value("${shop.index.reconcile-segment-size:1000}") int segmentSize
+    ) {
+        this.advisoryLocks = advisoryLocks;
+        this.elasticsearchOperations = elasticsearchOperations;
+        this.shopIndexer = shopIndexer;
+        this.shopReindexService = shopReindexService;
+        this.shopRepository = shopRepository;
+        this.segmentSize = segmentSize;
+        this.readTransaction = new TransactionTemplate(transactionManager);
+        this.readTransaction.setReadOnly(true);
+
+        this.driftFound = new EnumMap<>(Drift.class);
+        this.driftRepaired = new EnumMap<>(Drift.class);
+        for (Drift drift : Drift.values()) {
+            driftFound.put(drift, Counter.builder("shop.index.reconcile.drift")
+                    .description("Shops found different in the search index and in the database")
+                    .tag("kind", drift.tag)
+                    .register(meterRegistry));
+            driftRepaired.put(drift, Counter.builder("shop.index.reconcile.repaired")
+                    .description("Shops indexed again or deleted from the search index by the reconciliation")
+                    .tag("kind", drift.tag)
+                    .register(meterRegistry));
+        }
+    }
+
+    @Scheduled(cron = "${shop.index.reconcile-cron:0 30 3 * * *}")
+    public void reconcile() {
+        // Each instance runs the cron, a single one compares and repairs the index
+        if (!advisoryLocks.runExclusively("shop-index-reconcile", this::reconcileAll)) {
+            log.info("Shop index reconciliation skipped, running on another instance");
+        }
+    }
+
+    private void reconcileAll() {
+        // Until the first full indexing is done, every shop would look missing
+        if (!shopReindexService.isCompleted()) {
+            log.info("Shop index reconciliation skipped, the index is being built");
+            return;
+        }
+
+        Report report = new Report();
+        try {
+            long lastId = 0;
+            List<Long> ids = shopRepository.findIdsAfter(lastId, PageRequest.of(0, segmentSize));
+            while (!ids.isEmpty()) {
+                long to = ids.get(ids.size() - 1);
+                reconcileSegment(lastId, to, report);
+                lastId = to;
+                ids = shopRepository.findIdsAfter(lastId, PageRequest.of(0, segmentSize));
+            }
+            // Shops deleted after the last one left
+            repair(Drift.DELETED, indexedFingerprints(lastId, Long.MAX_VALUE).keySet(), report);
+
+            if (elasticsearchOperations.count(Query.findAll(), ShopDocument.class) > shopRepository.count()) {
+                deleteOrphans(report);
+            }
+        } catch (Exception e) {
+            log.error("Shop index reconciliation failed", e);
+        }
+
+        log.info("Shop index reconciled: {} segments of {} differed, {} missing, {} outdated and {} deleted "
+                        + "shops found, {} repaired",
+                report.segmentsDiffering, report.segments, report.found(Drift.MISSING),
+                report.found(Drift.OUTDATED), report.found(Drift.DELETED), report.repaired);
+    }
+
+    private void reconcileSegment(long fromIdExclusive, long toIdInclusive, Report report) {
+        report.segments++;
+        Map<Long, String> indexed = indexedFingerprints(fromIdExclusive, toIdInclusive);
+        SegmentChecksum checksum = shopRepository.findSegmentChecksum(fromIdExclusive, toIdInclusive);
+        if (checksum.getCount() == indexed.size() && checksum(indexed).equals(checksum.getChecksum())) {
+            return;
+        }
+
+        report.segmentsDiffering++;
+        List<Long> missing = new ArrayList<>();
+        List<Long> outdated = new ArrayList<>();
+        Set<Long> deleted = new HashSet<>(indexed.keySet());
+        for (ShopFingerprint shop : shopRepository.findFingerprintsBetween(fromIdExclusive, toIdInclusive)) {
+            deleted.remove(shop.getId());
+            String fingerprint = indexed.get(shop.getId());
+            if (fingerprint == null) {
+                missing.add(shop.getId());
+            } else if (!fingerprint.equals(shop.getFingerprint())) {
+                outdated.add(shop.getId());
+            }
+        }
+
+        repair(Drift.MISSING, missing, report);
+        repair(Drift.OUTDATED, outdated, report);
+        repair(Drift.DELETED, deleted, report);
+    }
+
+    private void deleteOrphans(Report report) {
+        NativeQuery query = NativeQuery.builder()
+                .withQuery(q -> q.matchAll(m -> m))
+                .withSourceFilter(new FetchSourceFilterBuilder().withIncludes(FINGERPRINT).build())
+                .withPageable(PageRequest.of(0, segmentSize))
+                .build();
+        Set<Long> orphans = new HashSet<>();
+        try (SearchHitsIterator<ShopDocument> hits = elasticsearchOperations.searchForStream(query, ShopDocument.class)) {
+            List<Long> batch = new ArrayList<>();
+            while (hits.hasNext()) {
+                batch.add(Long.valueOf(hits.next().getId()));
+                if (batch.size() == segmentSize || !hits.hasNext()) {
+                    orphans.addAll(batch);
+                    shopRepository.findExistingIds(batch).forEach(orphans::remove);
+                    batch.clear();
+                }
+            }
+        }
+        repair(Drift.DELETED, orphans, report);
+    }
+
+    private void repair(Drift drift, Collection<Long> ids, Report report) {
+        if (ids.isEmpty()) {
+            return;
+        }
+
+        driftFound.get(drift).increment(ids.size());
+        report.found.merge(drift, (long) ids.size(), Long::sum);
+        Set<Long> failed = drift == Drift.DELETED
+                ? shopIndexer.bulkDelete(ids)
+                : shopIndexer.bulkIndex(readTransaction.execute(tx ->
+                        shopIndexer.toDocuments(shopRepository.findAllById(ids))));
+        driftRepaired.get(drift).increment(ids.size() - failed.size());
+        report.repaired += ids.size() - failed.size();
+    }
+
+    // Every document of the range, including those of the shops deleted since they were indexed
+    private Map<Long, String> indexedFingerprints(long fromIdExclusive, long toIdInclusive) {
+        NativeQuery query = NativeQuery.builder()
+                .withQuery(q -> q.range(r -> r
+                        .field(SHOP_ID)
+                        .gt(JsonData.of(fromIdExclusive))
+                        .lte(JsonData.of(toIdInclusive))))
+                .withSourceFilter(new FetchSourceFilterBuilder().withIncludes(FINGERPRINT).build())
+                .withPageable(PageRequest.of(0, segmentSize))
+                .build();
+        Map<Long, String> fingerprints = new HashMap<>();
+        try (SearchHitsIterator<ShopDocument> hits = elasticsearchOperations.searchForStream(query, ShopDocument.class)) {
+            while (hits.hasNext()) {
+                SearchHit<ShopDocument> hit = hits.next();
+                // Documents indexed before the fingerprints have none, and are indexed again
+                String fingerprint = hit.getContent().getFingerprint();
+                fingerprints.put(Long.valueOf(hit.getId()), fingerprint == null ? "" : fingerprint);
+            }
+        }
+        return fingerprints;
+    }
+
+    // Same digest as ShopRepository.findSegmentChecksum
+    private static String checksum(Map<Long, String> fingerprints) {
+        String joined = new TreeMap<>(fingerprints).entrySet().stream()
+                .map(entry -> entry.getKey() + "=" + entry.getValue())
+                .collect(Collectors.joining(","));
+        return DigestUtils.md5DigestAsHex(joined.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private enum Drift {
+        // In the database, not in the index
+        MISSING("missing"),
+        // In both, with different fields
+        OUTDATED("outdated"),
+        // In the index only
+        DELETED("deleted");
+
+        private final String tag;
+
+        Drift(String tag) {
+            this.tag = tag;
+        }
+    }
+
+    private static class Report {
+        private final Map<Drift, Long> found = new EnumMap<>(Drift.class);
+        private long repaired;
+        private int segments;
+        private int segmentsDiffering;
+
+        private long found(Drift drift) {
+            return found.getOrDefault(drift, 0L);
+        }
+    }
+}
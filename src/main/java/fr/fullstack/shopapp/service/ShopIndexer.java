@@ -0,0 +1,140 @@
+package fr.fullstack.shopapp.service;
+
+import fr.fullstack.shopapp.document.ShopDocument;
+import fr.fullstack.shopapp.model.Product;
+import fr.fullstack.shopapp.model.Shop;
+import fr.fullstack.shopapp.repository.elastic.ShopElasticRepository;
+import fr.fullstack.shopapp.repository.jpa.ProductRepository;
+import fr.fullstack.shopapp.repository.jpa.ShopRepository;
+import fr.fullstack.shopapp.repository.jpa.ShopRepository.ShopFingerprint;
+import io.micrometer.observation.annotation.Observed;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.elasticsearch.BulkFailureException;
+import org.springframework.data.elasticsearch.core.ElasticsearchOperations;
+import org.springframework.data.elasticsearch.core.mapping.IndexCoordinates;
+import org.springframework.data.elasticsearch.core.query.IndexQuery;
+import org.springframework.data.elasticsearch.core.query.IndexQueryBuilder;
+import org.springframework.stereotype.Service;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Sends shops to the search index through the _bulk API, one request per batch.
+ */
+@Observed(name = "shop.elasticsearch")
+@Service
+public class ShopIndexer {
+
+    private static final Logger log = LoggerFactory.getLogger(ShopIndexer.class);
+
+    private final ElasticsearchOperations elasticsearchOperations;
+    private final int maxProductsPerShop;
+    private final ProductRepository productRepository;
+    private final ShopElasticRepository shopElasticRepository;
+    private final ShopRepository shopRepository;
+
+    public ShopIndexer(
+            ElasticsearchOperations elasticsearchOperations,
+            ProductRepository productRepository,
+            ShopElasticRepository shopElasticRepository,
+            ShopRepository shopRepository,
+            @Value("${shop.index.max-products-per-shop:10000}") int maxProductsPerShop
+    ) {
+        this.elasticsearchOperations = elasticsearchOperations;
+        this.maxProductsPerShop = maxProductsPerShop;
+        this.productRepository = productRepository;
+        this.shopElasticRepository = shopElasticRepository;
+        this.shopRepository = shopRepository;
+    }
+
+    /**
+     * Delete the given shops from the index in a single request.
+     *
+     * @return the ids that could not be deleted
+     */
+    public Set<Long> bulkDelete(Collection<Long> shopIds) {
+        if (shopIds.isEmpty()) {
+            return Set.of();
+        }
+
+        try {
+            shopElasticRepository.deleteAllById(shopIds);
+            return Set.of();
+        } catch (Exception e) {
+            log.error("Deletion of {} shops from the index failed", shopIds.size(), e);
+            return new HashSet<>(shopIds);
+        }
+    }
+
+    public IndexCoordinates getIndexCoordinates() {
+        return elasticsearchOperations.getIndexCoordinatesFor(ShopDocument.class);
+    }
+
+    /**
+     * Build the documents of the given shops, reading the products of all of them in one query.
+     * Must be called within a transaction.
+     */
+    public List<ShopDocument> toDocuments(List<Shop> shops) {
+        if (shops.isEmpty()) {
+            return List.of();
+        }
+
+        List<Long> ids = shops.stream().map(Shop::getId).toList();
+        // Read before the products: a product changed in between leaves an outdated fingerprint,
+        // which the reconciliation repairs, rather than an outdated document under an up to date one
+        Map<Long, String> fingerprints = shopRepository.findFingerprints(ids).stream()
+                .collect(Collectors.toMap(ShopFingerprint::getId, ShopFingerprint::getFingerprint));
+        Map<Long, List<Product>> productsByShop = productRepository
+                .findWithLocalizedProductsByShopIdIn(ids)
+                .stream()
+                .collect(Collectors.groupingBy(product -> product.getShop().getId()));
+        return shops.stream()
+                .map(shop -> {
+                    ShopDocument document = ShopDocument.from(
+                            shop, productsByShop.getOrDefault(shop.getId(), List.of()), maxProductsPerShop
+                    );
+                    document.setFingerprint(fingerprints.get(shop.getId()));
+                    return document;
+                })
+                .toList();
+    }
+
+    /**
+     * Index the given shops in a single bulk request.
+     *
+     * @return the ids of the shops that were rejected by Elasticsearch
+     */
+    public Set<Long> bulkIndex(List<ShopDocument> shops) {
+        if (shops.isEmpty()) {
+            return Set.of();
+        }
+
+        List<IndexQuery> queries = shops.stream().map(this::toIndexQuery).toList();
+        try {
+            elasticsearchOperations.bulkIndex(queries, getIndexCoordinates());
+            return Set.of();
+        } catch (BulkFailureException e) {
+            log.warn("{} of {} shops rejected by Elasticsearch", e.getFailedDocuments().size(), shops.size());
+            return e.getFailedDocuments().keySet().stream().map(Long::valueOf).collect(Collectors.toSet());
+        } catch (Exception e) {
+            log.error("Bulk indexing of {} shops failed", shops.size(), e);
+            Set<Long> failed = new HashSet<>();
+            shops.forEach(shop -> failed.add(shop.getId()));
+            return failed;
+        }
+    }
+
+    private IndexQuery toIndexQuery(ShopDocument shop) {
+        return new IndexQueryBuilder()
+                .withId(String.valueOf(shop.getId()))
+                .withObject(shop)
+                .build();
+    }
+}
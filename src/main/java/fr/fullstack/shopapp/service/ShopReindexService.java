@@ -0,0 +1,147 @@
+package fr.fullstack.shopapp.service;
+
+import fr.fullstack.shopapp.document.ShopDocument;
+import fr.fullstack.shopapp.model.SyncStatus;
+import fr.fullstack.shopapp.repository.jpa.ShopRepository;
+import fr.fullstack.shopapp.repository.jpa.SyncStatusRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Full reindex of the shop search index.
+ * <p>
+ * Shops are read by ascending id in chunks of {@code shop.reindex.batch-size}, up to
+ * {@code shop.reindex.parallelism} chunks are sent to Elasticsearch at the same time, and the
+ * progress is saved in {@link SyncStatus} once every chunk of a round has been sent. An
+ * interrupted run therefore resumes after the last saved id. Shops rejected by Elasticsearch are
+ * handed to the outbox, which retries them.
+ */
+@Service
+public class ShopReindexService {
+
+    private static final Logger log = LoggerFactory.getLogger(ShopReindexService.class);
+
+    private final int batchSize;
+    private final int parallelism;
+    private final ShopIndexer shopIndexer;
+    private final ShopIndexOutboxService shopIndexOutboxService;
+    private final ShopRepository shopRepository;
+    private final SyncStatusRepository syncStatusRepository;
+    private final TransactionTemplate readTransaction;
+    private final TransactionTemplate transactionTemplate;
+
+    public ShopReindexService(
+            ShopIndexer shopIndexer,
+            ShopIndexOutboxService shopIndexOutboxService,
+            ShopRepository shopRepository,
+            SyncStatusRepository syncStatusRepository,
+            PlatformTransactionManager transactionManager,
+            @Value("${shop.reindex.batch-size:1000}") int batchSize,
+            @Value("${shop.reindex.parallelism:4}") int parallelism
+    ) {
+        this.shopIndexer = shopIndexer;
+        this.shopIndexOutboxService = shopIndexOutboxService;
+        this.shopRepository = shopRepository;
+        this.syncStatusRepository = syncStatusRepository;
+        this.batchSize = batchSize;
+        this.parallelism = parallelism;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.readTransaction = new TransactionTemplate(transactionManager);
+        this.readTransaction.setReadOnly(true);
+    }
+
+    public boolean isCompleted() {
+        return getStatus().isSyncCompleted();
+    }
+
+    public SyncStatus reindex() {
+        SyncStatus status = getStatus();
+        if (status.isSyncCompleted()) {
+            return status;
+        }
+
+        log.info("Indexing shops into {} from id {}", status.getIndexName(), status.getLastShopId());
+        ExecutorService executor = Executors.newFixedThreadPool(parallelism);
+        try {
+            boolean hasMore = true;
+            while (hasMore) {
+                List<List<ShopDocument>> round = new ArrayList<>();
+                long lastId = status.getLastShopId();
+                while (round.size() < parallelism) {
+                    Chunk chunk = readChunk(lastId);
+                    if (chunk == null) {
+                        hasMore = false;
+                        break;
+                    }
+                    round.add(chunk.shops());
+                    lastId = chunk.lastId();
+                }
+
+                List<CompletableFuture<Set<Long>>> sent = round.stream()
+                        .map(chunk -> CompletableFuture.supplyAsync(() -> shopIndexer.bulkIndex(chunk), executor))
+                        .toList();
+                Set<Long> failed = new HashSet<>();
+                for (int i = 0; i < round.size(); i++) {
+                    Set<Long> failedInChunk = sent.get(i).join();
+                    failed.addAll(failedInChunk);
+                    status.setIndexedCount(status.getIndexedCount() + round.get(i).size() - failedInChunk.size());
+                    status.setFailedCount(status.getFailedCount() + failedInChunk.size());
+                }
+                if (!failed.isEmpty()) {
+                    transactionTemplate.executeWithoutResult(tx -> shopIndexOutboxService.enqueueAll(failed));
+                }
+
+                status.setLastShopId(lastId);
+                status.setSyncCompleted(!hasMore);
+                status = syncStatusRepository.save(status);
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        log.info("Indexed {} shops into {}, {} failed",
+                status.getIndexedCount(), status.getIndexName(), status.getFailedCount());
+        return status;
+    }
+
+    /**
+     * Progress of the indexing into the current index, as saved after each round.
+     */
+    public SyncStatus getStatus() {
+        String indexName = shopIndexer.getIndexCoordinates().getIndexName();
+        return syncStatusRepository.findFirstByIndexNameOrderByIdDesc(indexName).orElseGet(() -> {
+            SyncStatus status = new SyncStatus();
+            status.setIndexName(indexName);
+            // Shops updated from now on are also picked up by the incremental reindex
+            status.setWatermark(shopRepository.findMaxUpdatedAt().orElse(Instant.EPOCH));
+            return status;
+        });
+    }
+
+    private Chunk readChunk(long lastId) {
+        return readTransaction.execute(tx -> {
+            List<Long> ids = shopRepository.findIdsAfter(lastId, PageRequest.of(0, batchSize));
+            if (ids.isEmpty()) {
+                return null;
+            }
+            return new Chunk(ids.get(ids.size() - 1), shopIndexer.toDocuments(shopRepository.findAllById(ids)));
+        });
+    }
+
+    private record Chunk(long lastId, List<ShopDocument> shops) {
+    }
+}
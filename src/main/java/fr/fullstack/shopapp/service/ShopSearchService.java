@@ -0,0 +1,226 @@
+package fr.fullstack.shopapp.service;
+
+import co.elastic.clients.elasticsearch._types.aggregations.Aggregate;
+import co.elastic.clients.elasticsearch._types.aggregations.Aggregation;
+import co.elastic.clients.elasticsearch._types.aggregations.AggregationRange;
+import co.elastic.clients.elasticsearch._types.aggregations.CalendarInterval;
+import co.elastic.clients.elasticsearch._types.query_dsl.ChildScoreMode;
+import co.elastic.clients.elasticsearch._types.query_dsl.TextQueryType;
+import fr.fullstack.shopapp.document.ProductDocument;
+import fr.fullstack.shopapp.document.ShopDocument;
+import fr.fullstack.shopapp.dto.FacetBucket;
+import fr.fullstack.shopapp.dto.ProductSearchHit;
+import fr.fullstack.shopapp.dto.ShopSearchFacets;
+import fr.fullstack.shopapp.dto.ShopSearchHit;
+import fr.fullstack.shopapp.dto.ShopSearchPage;
+import io.micrometer.observation.annotation.Observed;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.elasticsearch.client.elc.ElasticsearchAggregation;
+import org.springframework.data.elasticsearch.client.elc.ElasticsearchAggregations;
+import org.springframework.data.elasticsearch.client.elc.NativeQuery;
+import org.springframework.data.elasticsearch.client.elc.NativeQueryBuilder;
+import org.springframework.data.elasticsearch.core.ElasticsearchOperations;
+import org.springframework.data.elasticsearch.core.SearchHit;
+import org.springframework.data.elasticsearch.core.SearchHits;
+import org.springframework.data.elasticsearch.core.query.FetchSourceFilterBuilder;
+import org.springframework.data.elasticsearch.core.query.HighlightQuery;
+import org.springframework.data.elasticsearch.core.query.highlight.Highlight;
+import org.springframework.data.elasticsearch.core.query.highlight.HighlightField;
+import org.springframework.data.elasticsearch.core.query.highlight.HighlightParameters;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Full text search of the shops by their name and by the localized names and descriptions of
+ * their products, ranked by relevance.
+ */
+@Observed(name = "shop.elasticsearch")
+@Service
+public class ShopSearchService {
+
+    private static final String CATEGORIES_FACET = "categories";
+
+    private static final String CREATED_AT_FACET = "createdAt";
+
+    private static final String IN_VACATIONS_FACET = "inVacations";
+
+    private static final String PRICE_RANGES_FACET = "priceRanges";
+
+    private static final String PRODUCTS = "products";
+
+    // Names weigh more than descriptions, each locale is searched with its own analyzer
+    private static final List<String> PRODUCT_FIELDS = List.of(
+            "products.nameFr^2", "products.nameEn^2", "products.descriptionFr", "products.descriptionEn"
+    );
+
+    private static final List<String> SHOP_FIELDS = List.of("name^3", "name.fr^2", "name.en^2");
+
+    private final int categoryFacetSize;
+    private final String createdAtFormat;
+    private final CalendarInterval createdAtInterval;
+    private final ElasticsearchOperations elasticsearchOperations;
+    private final List<AggregationRange> priceRanges;
+    private final int productsPerShop;
+
+    public ShopSearchService(
+            ElasticsearchOperations elasticsearchOperations,
+            @Value("${shop.search.products-per-shop:3}") int productsPerShop,
+            @Value("${shop.search.facets.category-size:20}") int categoryFacetSize,
+            @Value("${shop.search.facets.created-at-interval:month}") String createdAtInterval,
+            @Value("${shop.search.facets.price-bounds:10,20,50,100}") List<Double> priceBounds
+    ) {
+        this.elasticsearchOperations = elasticsearchOperations;
+        this.productsPerShop = productsPerShop;
+        this.categoryFacetSize = categoryFacetSize;
+        this.createdAtInterval = CalendarInterval._DESERIALIZER.parse(createdAtInterval);
+        this.createdAtFormat = bucketFormat(this.createdAtInterval);
+        this.priceRanges = toRanges(priceBounds);
+    }
+
+    /**
+     * Search the shops, and compute the facets of all the matching shops in the same request when
+     * {@code withFacets} is set.
+     */
+    public ShopSearchPage search(String text, Pageable pageable, boolean withFacets) {
+        NativeQueryBuilder builder = NativeQuery.builder()
+                .withQuery(q -> q.bool(b -> b
+                        .should(s -> s.multiMatch(m -> m
+                                .query(text)
+                                .type(TextQueryType.MostFields)
+                                .fields(SHOP_FIELDS)))
+                        .should(s -> s.nested(n -> n
+                                .path(PRODUCTS)
+                                .scoreMode(ChildScoreMode.Max)
+                                .query(nested -> nested.multiMatch(m -> m
+                                        .query(text)
+                                        .type(TextQueryType.BestFields)
+                                        .fields(PRODUCT_FIELDS)))
+                                .innerHits(inner -> inner
+                                        .size(productsPerShop)
+                                        .highlight(h -> h
+                                                .fields("products.nameFr", f -> f)
+                                                .fields("products.nameEn", f -> f)
+                                                .fields("products.descriptionFr", f -> f)
+                                                .fields("products.descriptionEn", f -> f)))))
+                        .minimumShouldMatch("1")))
+                .withHighlightQuery(new HighlightQuery(
+                        new Highlight(
+                                HighlightParameters.builder().withRequireFieldMatch(false).build(),
+                                List.of(new HighlightField("name"))
+                        ),
+                        ShopDocument.class
+                ))
+                // The products come with the inner hits, only the matching ones are returned
+                .withSourceFilter(new FetchSourceFilterBuilder().withExcludes(PRODUCTS).build())
+                .withPageable(pageable);
+        if (withFacets) {
+            addFacets(builder);
+        }
+
+        SearchHits<ShopDocument> hits = elasticsearchOperations.search(builder.build(), ShopDocument.class);
+        List<ShopSearchHit> content = hits.getSearchHits().stream().map(this::toShopSearchHit).toList();
+        ShopSearchFacets facets = withFacets && hits.getAggregations() instanceof ElasticsearchAggregations aggregations
+                ? toFacets(aggregations.aggregationsAsMap())
+                : null;
+        return new ShopSearchPage(content, pageable, hits.getTotalHits(), facets);
+    }
+
+    private void addFacets(NativeQueryBuilder builder) {
+        builder.withAggregation(CATEGORIES_FACET, Aggregation.of(a -> a
+                        .terms(t -> t.field("categoryIds").size(categoryFacetSize))))
+                .withAggregation(IN_VACATIONS_FACET, Aggregation.of(a -> a
+                        .terms(t -> t.field("inVacations"))))
+                .withAggregation(CREATED_AT_FACET, Aggregation.of(a -> a
+                        .dateHistogram(h -> h.field("createdAt")
+                                .calendarInterval(createdAtInterval)
+                                .format(createdAtFormat)
+                                .minDocCount(1))))
+                // Ranges of product prices, counting the shops rather than their products
+                .withAggregation(PRICE_RANGES_FACET, Aggregation.of(a -> a
+                        .nested(n -> n.path(PRODUCTS))
+                        .aggregations(PRICE_RANGES_FACET, range -> range
+                                .range(r -> r.field("products.price").ranges(priceRanges))
+                                .aggregations("shops", shops -> shops.reverseNested(r -> r)))));
+    }
+
+    /**
+     * Key of the creation date buckets, as precise as the interval: "2024-01" for a month would be
+     * the same key for every week of January.
+     */
+    private static String bucketFormat(CalendarInterval interval) {
+        return switch (interval) {
+            case Year -> "yyyy";
+            case Quarter, Month -> "yyyy-MM";
+            case Week, Day -> "yyyy-MM-dd";
+            case Hour, Minute, Second -> "yyyy-MM-dd'T'HH:mm";
+        };
+    }
+
+    private static ShopSearchFacets toFacets(Map<String, ElasticsearchAggregation> aggregations) {
+        Aggregate categories = aggregations.get(CATEGORIES_FACET).aggregation().getAggregate();
+        Aggregate inVacations = aggregations.get(IN_VACATIONS_FACET).aggregation().getAggregate();
+        Aggregate createdAt = aggregations.get(CREATED_AT_FACET).aggregation().getAggregate();
+        Aggregate prices = aggregations.get(PRICE_RANGES_FACET).aggregation().getAggregate();
+        return new ShopSearchFacets(
+                categories.lterms().buckets().array().stream()
+                        .map(bucket -> new FacetBucket(String.valueOf(bucket.key()), bucket.docCount()))
+                        .toList(),
+                // Boolean terms come as 0 / 1 keys
+                inVacations.lterms().buckets().array().stream()
+                        .map(bucket -> new FacetBucket(bucket.keyAsString(), bucket.docCount()))
+                        .toList(),
+                createdAt.dateHistogram().buckets().array().stream()
+                        .map(bucket -> new FacetBucket(bucket.keyAsString(), bucket.docCount()))
+                        .toList(),
+                prices.nested().aggregations().get(PRICE_RANGES_FACET).range().buckets().array().stream()
+                        .map(bucket -> new FacetBucket(
+                                bucket.key(), bucket.aggregations().get("shops").reverseNested().docCount()))
+                        .toList()
+        );
+    }
+
+    // Consecutive ranges: below the first bound, between each bound and the next, from the last
+    private static List<AggregationRange> toRanges(List<Double> bounds) {
+        List<Double> sorted = bounds.stream().sorted().toList();
+        List<AggregationRange> ranges = new ArrayList<>();
+        for (int i = 0; i <= sorted.size(); i++) {
+            String from = i == 0 ? null : String.valueOf(sorted.get(i - 1));
+            String to = i == sorted.size() ? null : String.valueOf(sorted.get(i));
+            ranges.add(AggregationRange.of(r -> r.from(from).to(to)));
+        }
+        return ranges;
+    }
+
+    private ShopSearchHit toShopSearchHit(SearchHit<ShopDocument> hit) {
+        ShopDocument shop = hit.getContent();
+        List<ProductSearchHit> products = new ArrayList<>();
+        SearchHits<?> productHits = hit.getInnerHits(PRODUCTS);
+        if (productHits != null) {
+            for (SearchHit<?> productHit : productHits.getSearchHits()) {
+                if (productHit.getContent() instanceof ProductDocument product) {
+                    products.add(new ProductSearchHit(product.getId(), withoutPrefix(productHit.getHighlightFields())));
+                }
+            }
+        }
+        return new ShopSearchHit(
+                shop.getId(),
+                shop.getName(),
+                shop.getInVacations(),
+                shop.getCreatedAt(),
+                hit.getScore(),
+                hit.getHighlightField("name"),
+                products
+        );
+    }
+
+    private static Map<String, List<String>> withoutPrefix(Map<String, List<String>> highlights) {
+        Map<String, List<String>> fields = new LinkedHashMap<>();
+        highlights.forEach((field, fragments) -> fields.put(field.substring(field.lastIndexOf('.') + 1), fragments));
+        return fields;
+    }
+}
@@ -1,46 +1,84 @@
 package fr.fullstack.shopapp.service;
 
-import fr.fullstack.shopapp.model.OpeningHoursShop;
-import fr.fullstack.shopapp.model.Product;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import fr.fullstack.shopapp.config.CacheConfig;
+import fr.fullstack.shopapp.dto.CursorPage;
 import fr.fullstack.shopapp.model.Shop;
-import fr.fullstack.shopapp.repository.elastic.ShopElasticRepository;
 import fr.fullstack.shopapp.repository.jpa.ShopRepository;
-import org.apache.coyote.BadRequestException;
+import fr.fullstack.shopapp.repository.jpa.ShopSpecifications;
+import fr.fullstack.shopapp.service.ListingResponseCache.Listing;
+import fr.fullstack.shopapp.util.Cursor;
+import fr.fullstack.shopapp.util.ETags;
+import fr.fullstack.shopapp.util.WeeklySchedule;
+import io.micrometer.observation.Observation;
+import io.micrometer.observation.ObservationRegistry;
+import io.micrometer.observation.annotation.Observed;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.annotation.Cacheable;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.web.server.ResponseStatusException;
 
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.PersistenceContext;
+import java.time.Clock;
 import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Comparator;
 import java.util.List;
-import java.util.Map;
 import java.util.Optional;
-import java.util.stream.Collectors;
+import java.util.Set;
 
+@Observed(name = "shop.service")
 @Service
 public class ShopService {
+    // Values of the sort tag, any other property of the pageable sort is tagged "other"
+    private static final Set<String> SORT_TAGS = Set.of("createdAt", "id", "name", "nbCategories", "nbProducts");
+
     @PersistenceContext
     private EntityManager em;
 
     @Autowired
     private ShopRepository shopRepository;
     @Autowired
-    private ShopElasticRepository shopElasticRepository;
+    private ShopIndexOutboxService shopIndexOutboxService;
+    @Autowired
+    private EntityCacheInvalidator entityCacheInvalidator;
+    @Autowired
+    private ListingResponseCache listingResponseCache;
+    @Autowired
+    private ObjectMapper objectMapper;
+    @Autowired
+    private ObservationRegistry observationRegistry;
+    @Autowired
+    private OpeningHoursIndex openingHoursIndex;
+
+    @Value("${shop.opening-hours.zone:Europe/Paris}")
+    private ZoneId openingHoursZone;
 
     @Transactional
     public Shop createShop(Shop shop) throws Exception {
-        validateOpeningHours(shop.getOpeningHours());
+        OpeningHoursRules.validate(shop.getOpeningHours());
         try {
             Shop newShop = shopRepository.save(shop);
-            // Refresh the entity after the save. Otherwise, @Formula does not work.
+            // Refresh the entity after the save to read the counters maintained by the database.
             em.flush();
             em.refresh(newShop);
-            // Index the entity into idx_shops in ElasticSearch
-            shopElasticRepository.save(newShop);
+            // Index the entity into idx_shops_search in ElasticSearch once committed
+            shopIndexOutboxService.enqueue(newShop.getId());
+            openingHoursIndex.update(newShop);
+            listingResponseCache.invalidate(Listing.SHOPS);
             return newShop;
         } catch (Exception e) {
             throw new Exception(e.getMessage());
@@ -50,192 +88,191 @@ public class ShopService {
     @Transactional
     public void deleteShopById(long id) throws Exception {
         try {
-            Shop shop = getShop(id);
-            // delete nested relations with products
-            deleteNestedRelations(shop);
-            shopRepository.deleteById(id);
-            // Supprimer de l'index après avoir supprimé de la base de données
-            shopElasticRepository.deleteById(id);
+            getShop(id);
+            deleteShops(List.of(id));
         } catch (Exception e) {
             throw new Exception(e.getMessage());
         }
     }
 
+    /**
+     * Delete the given shops, ignoring the unknown ids. Their products are kept without shop.
+     */
+    @Transactional
+    public void deleteShops(Collection<Long> ids) {
+        if (ids.isEmpty()) {
+            return;
+        }
+        // The cached products of these shops are evicted too
+        entityCacheInvalidator.evictShops(ids);
+        // delete nested relations with products and opening hours, one statement each
+        shopRepository.detachProducts(ids);
+        shopRepository.deleteOpeningHours(ids);
+        shopRepository.deleteByIdIn(ids);
+        // Supprimer de l'index après avoir supprimé de la base de données
+        shopIndexOutboxService.enqueueAll(ids);
+        openingHoursIndex.removeAll(ids);
+        listingResponseCache.invalidate(Listing.SHOPS);
+    }
+
+    @Cacheable(cacheNames = CacheConfig.SHOPS, key = "#id")
+    @Transactional(readOnly = true)
     public Shop getShopById(long id) throws Exception {
         try {
-            return getShop(id);
+            // Cached as a detached copy, like the products
+            return objectMapper.convertValue(getShop(id), Shop.class);
         } catch (Exception e) {
             throw new Exception(e.getMessage());
         }
     }
 
+    @Transactional(readOnly = true)
+    public Optional<String> getShopETag(long id) {
+        return shopRepository.findVersionById(id).map(version -> ETags.shop(id, version));
+    }
+
+    @Observed(name = "shop.service.shop-list")
+    @Transactional(readOnly = true)
     public Page<Shop> getShopList(
             Optional<String> name,
             Optional<String> sortBy,
             Optional<Boolean> inVacations,
-            Optional<String> createdBefore,
             Optional<String> createdAfter,
+            Optional<String> createdBefore,
             Pageable pageable
     ) {
-        // SORT
-        if (sortBy.isPresent()) {
-            switch (sortBy.get()) {
-                case "name":
-                    return shopRepository.findByOrderByNameAsc(pageable);
-                case "createdAt":
-                    return shopRepository.findByOrderByCreatedAtAsc(pageable);
-                default:
-                    return shopRepository.findByOrderByNbProductsAsc(pageable);
-            }
-        }
-
         // FILTERS AND SEARCH
-        Page<Shop> shopList = getShopListWithFilter(name, inVacations, createdBefore, createdAfter, pageable);
-        if (shopList != null) {
-            return shopList;
+        Specification<Shop> filters = Specification.allOf(
+                name.filter(s -> !s.isBlank()).map(ShopSpecifications::nameContains).orElse(null),
+                inVacations.map(ShopSpecifications::inVacations).orElse(null),
+                createdAfter.map(LocalDate::parse).map(ShopSpecifications::createdAfter).orElse(null),
+                createdBefore.map(LocalDate::parse).map(ShopSpecifications::createdBefore).orElse(null)
+        );
+
+        // SORT, always ended by the id so that pages are stable
+        Sort sort = sortBy.map(s -> switch (s) {
+            case "name" -> Sort.by("name");
+            case "createdAt" -> Sort.by("createdAt");
+            case "nbCategories" -> Sort.by(Sort.Direction.DESC, "nbCategories");
+            default -> Sort.by(Sort.Direction.DESC, "nbProducts");
+        }).orElse(pageable.getSort()).and(Sort.by("id"));
+
+        tagShopListBranch(name, inVacations, createdAfter, createdBefore, sort);
+
+        return shopRepository.findAll(
+                filters, PageRequest.of(pageable.getPageNumber(), pageable.getPageSize(), sort)
+        );
+    }
+
+    /**
+     * Shops open at "now" or at a "D-HH:mm" time of the week, by ascending id.
+     */
+    @Transactional(readOnly = true)
+    public Page<Shop> getOpenShopList(String openAt, Pageable pageable) {
+        if (!openingHoursIndex.isReady()) {
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Opening hours index is being built");
         }
+        OpeningHoursIndex.OpenShops open = openingHoursIndex.findOpenAt(
+                WeeklySchedule.parseMinuteOfWeek(openAt, Clock.system(openingHoursZone)),
+                pageable.getOffset(),
+                pageable.getPageSize()
+        );
+        List<Shop> shops = new ArrayList<>(shopRepository.findAllById(
+                Arrays.stream(open.ids()).boxed().toList()
+        ));
+        shops.sort(Comparator.comparingLong(Shop::getId));
+        return new PageImpl<>(shops, pageable, open.total());
+    }
 
+    @Transactional(readOnly = true)
+    public CursorPage<Shop> getShopListAfter(Optional<String> sortBy, Optional<Cursor> cursor, int size) {
+        Pageable limit = PageRequest.of(0, size + 1);
+        String sort = sortBy.map(s -> switch (s) {
+            case "name", "createdAt", "nbCategories" -> s;
+            default -> "nbProducts";
+        }).orElse("id");
 
-        // NONE
-        return shopRepository.findByOrderByIdAsc(pageable);
+        List<Shop> shops;
+        switch (sort) {
+            case "name":
+                shops = cursor.isPresent()
+                        ? shopRepository.findOrderedByNameAfter(cursor.get().getKey(sort), cursor.get().getId(), limit)
+                        : shopRepository.findOrderedByName(limit);
+                return CursorPage.of(shops, size, shop -> new Cursor(sort, shop.getName(), shop.getId()));
+            case "createdAt":
+                shops = cursor.isPresent()
+                        ? shopRepository.findOrderedByCreatedAtAfter(
+                                cursor.get().getDateKey(sort), cursor.get().getId(), limit)
+                        : shopRepository.findOrderedByCreatedAt(limit);
+                return CursorPage.of(shops, size,
+                        shop -> new Cursor(sort, shop.getCreatedAt().toString(), shop.getId()));
+            case "nbCategories":
+                shops = cursor.isPresent()
+                        ? shopRepository.findOrderedByNbCategoriesAfter(
+                                cursor.get().getLongKey(sort), cursor.get().getId(), limit)
+                        : shopRepository.findOrderedByNbCategories(limit);
+                return CursorPage.of(shops, size,
+                        shop -> new Cursor(sort, String.valueOf(shop.getNbCategories()), shop.getId()));
+            case "nbProducts":
+                shops = cursor.isPresent()
+                        ? shopRepository.findOrderedByNbProductsAfter(
+                                cursor.get().getLongKey(sort), cursor.get().getId(), limit)
+                        : shopRepository.findOrderedByNbProducts(limit);
+                return CursorPage.of(shops, size,
+                        shop -> new Cursor(sort, String.valueOf(shop.getNbProducts()), shop.getId()));
+            default:
+                shops = shopRepository.findByIdGreaterThanOrderByIdAsc(
+                        cursor.map(c -> {
+                            c.getKey(sort);
+                            return c.getId();
+                        }).orElse(0L),
+                        limit
+                );
+                return CursorPage.of(shops, size, shop -> new Cursor(sort, "", shop.getId()));
+        }
     }
 
     @Transactional
     public Shop updateShop(Shop shop) throws Exception {
         try {
             getShop(shop.getId());
+            entityCacheInvalidator.evictShops(List.of(shop.getId()));
+            // Read back by the refresh of createShop
+            shopRepository.incrementVersions(List.of(shop.getId()));
             return this.createShop(shop);
         } catch (Exception e) {
             throw new Exception(e.getMessage());
         }
     }
 
-    private void deleteNestedRelations(Shop shop) {
-        List<Product> products = shop.getProducts();
-        for (int i = 0; i < products.size(); i++) {
-            Product product = products.get(i);
-            product.setShop(null);
-            em.merge(product);
-            em.flush();
-        }
-    }
-
-    private Shop getShop(Long id) throws Exception {
-        Optional<Shop> shop = shopRepository.findById(id);
-        if (!shop.isPresent()) {
-            throw new Exception("Shop with id " + id + " not found");
-        }
-        return shop.get();
-    }
-
-    private Page<Shop> getShopListWithFilter(
+    // Bounded tags: the set of filters and the sort mode, never their values
+    private void tagShopListBranch(
             Optional<String> name,
             Optional<Boolean> inVacations,
             Optional<String> createdAfter,
             Optional<String> createdBefore,
-            Pageable pageable
+            Sort sort
     ) {
-
-        if (name.isPresent()) {
-            LocalDate after; LocalDate before;
-            after = createdAfter.map(LocalDate::parse).orElse(LocalDate.EPOCH);
-            before = createdBefore.map(LocalDate::parse).orElse(LocalDate.EPOCH.plusYears(90));
-            if (inVacations.isEmpty()) {
-                inVacations = Optional.of(false);
-            }
-            return shopElasticRepository.findAllByNameContainingAndCreatedAtAfterAndCreatedAtBeforeAndInVacationsEquals(name.get(), after, before, inVacations.get(), pageable);
-//            return shopElasticRepository.findAllByNameContaining(name.get(), pageable);
-        }
-                if (inVacations.isPresent() && createdBefore.isPresent() && createdAfter.isPresent()) {
-            return shopRepository.findByInVacationsAndCreatedAtGreaterThanAndCreatedAtLessThan(
-                    inVacations.get(),
-                    LocalDate.parse(createdAfter.get()),
-                    LocalDate.parse(createdBefore.get()),
-                    pageable
-            );
-        }
-
-        if (inVacations.isPresent() && createdBefore.isPresent()) {
-            return shopRepository.findByInVacationsAndCreatedAtLessThan(
-                    inVacations.get(), LocalDate.parse(createdBefore.get()), pageable
-            );
-        }
-
-        if (inVacations.isPresent() && createdAfter.isPresent()) {
-            return shopRepository.findByInVacationsAndCreatedAtGreaterThan(
-                    inVacations.get(), LocalDate.parse(createdAfter.get()), pageable
-            );
-        }
-
-        if (inVacations.isPresent()) {
-            return shopRepository.findByInVacations(inVacations.get(), pageable);
-        }
-
-        if (createdBefore.isPresent() && createdAfter.isPresent()) {
-            return shopRepository.findByCreatedAtBetween(
-                    LocalDate.parse(createdAfter.get()), LocalDate.parse(createdBefore.get()), pageable
-            );
-        }
-
-        if (createdBefore.isPresent()) {
-            return shopRepository.findByCreatedAtLessThan(
-                    LocalDate.parse(createdBefore.get()), pageable
-            );
+        Observation observation = observationRegistry.getCurrentObservation();
+        if (observation == null) {
+            return;
         }
-
-        return createdAfter.map(s -> shopRepository.findByCreatedAtGreaterThan(
-                LocalDate.parse(s), pageable
-        )).orElse(null);
-
-    }
-
-    private void validateOpeningHours(List<OpeningHoursShop> openingHours) {
-        // Regrouper les horaires par jour
-        Map<Long, List<OpeningHoursShop>> openingHoursByDay = openingHours.stream()
-                .collect(Collectors.groupingBy(OpeningHoursShop::getDay));
-
-        // Vérifier les chevauchements pour chaque jour
-        openingHoursByDay.values().forEach(hours -> {
-                try {
-                    checkForOverlap(hours);
-                } catch (BadRequestException e) {
-                    throw new RuntimeException(e);
-                }
-            });
+        List<String> filters = new ArrayList<>();
+        name.filter(s -> !s.isBlank()).ifPresent(s -> filters.add("name"));
+        inVacations.ifPresent(v -> filters.add("inVacations"));
+        createdAfter.ifPresent(d -> filters.add("createdAfter"));
+        createdBefore.ifPresent(d -> filters.add("createdBefore"));
+        observation.lowCardinalityKeyValue("filters", filters.isEmpty() ? "none" : String.join("+", filters));
+        // The sort applied, that of the pageable when sortBy is absent, always ended by the id
+        String sorted = sort.iterator().next().getProperty();
+        observation.lowCardinalityKeyValue("sort", SORT_TAGS.contains(sorted) ? sorted : "other");
     }
 
-    private void checkForOverlap(List<OpeningHoursShop> dayOpeningHours) throws BadRequestException {
-        // Trier les horaires par heure d'ouverture pour simplifier la vérification des chevauchements
-        List<OpeningHoursShop> sortedHours = dayOpeningHours.stream()
-                .sorted(Comparator.comparing(OpeningHoursShop::getOpenAt))
-                .toList();
-
-        // Vérifier uniquement les horaires consécutifs
-        for (int i = 0; i < sortedHours.size() - 1; i++) {
-            OpeningHoursShop current = sortedHours.get(i);
-            OpeningHoursShop next = sortedHours.get(i + 1);
-
-            if (isOverlapping(current, next)) {
-                throw new BadRequestException(
-                        String.format("Les horaires d'ouverture se chevauchent pour le jour %d : %s et %s",
-                                current.getDay(), current, next)
-                );
-            }
+    private Shop getShop(Long id) throws Exception {
+        Optional<Shop> shop = shopRepository.findById(id);
+        if (!shop.isPresent()) {
+            throw new Exception("Shop with id " + id + " not found");
         }
-    }
-
-    private boolean isOverlapping(OpeningHoursShop hours1, OpeningHoursShop hours2) {
-        // Un chevauchement existe si l'heure de fermeture du premier dépasse ou touche l'heure d'ouverture du second
-        return !hours1.getCloseAt().isBefore(hours2.getOpenAt());
-    }
-
-    @Transactional
-    public void syncExistingShopsToElasticsearch(Shop shop) throws Exception {
-            Shop toIndex = shopRepository.save(shop);
-            // Refresh the entity after the save. Otherwise, @Formula does not work.
-            em.flush();
-            em.refresh(toIndex);
-            // Index the entity into idx_shops in ElasticSearch
-            shopElasticRepository.save(toIndex);
+        return shop.get();
     }
 }
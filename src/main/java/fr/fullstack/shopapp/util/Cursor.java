@@ -0,0 +1,87 @@
+package fr.fullstack.shopapp.util;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+
+/**
+ * Position in a keyset listing: the sort mode, the sort key and the id of the last returned row,
+ * exchanged with the clients as an opaque base64 string.
+ */
+public class Cursor {
+    private static final char SEPARATOR = '|';
+
+    private final long id;
+
+    private final String key;
+
+    private final String sort;
+
+    public Cursor(String sort, String key, long id) {
+        this.sort = sort;
+        this.key = key;
+        this.id = id;
+    }
+
+    public static Cursor decode(String value) {
+        try {
+            String decoded = new String(Base64.getUrlDecoder().decode(value), StandardCharsets.UTF_8);
+            int first = decoded.indexOf(SEPARATOR);
+            int last = decoded.lastIndexOf(SEPARATOR);
+            return new Cursor(
+                    decoded.substring(0, first),
+                    decoded.substring(first + 1, last),
+                    Long.parseLong(decoded.substring(last + 1))
+            );
+        } catch (RuntimeException e) {
+            throw invalid();
+        }
+    }
+
+    public String encode() {
+        String value = sort + SEPARATOR + key + SEPARATOR + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    /**
+     * Sort key of the cursor, checking that it was issued for the same sort mode.
+     */
+    public String getKey(String expectedSort) {
+        if (!sort.equals(expectedSort)) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Cursor was not issued for sort " + expectedSort);
+        }
+        return key;
+    }
+
+    public LocalDate getDateKey(String expectedSort) {
+        try {
+            return LocalDate.parse(getKey(expectedSort));
+        } catch (DateTimeParseException e) {
+            throw invalid();
+        }
+    }
+
+    public long getLongKey(String expectedSort) {
+        try {
+            return Long.parseLong(getKey(expectedSort));
+        } catch (NumberFormatException e) {
+            throw invalid();
+        }
+    }
+
+    public String getSort() {
+        return sort;
+    }
+
+    private static ResponseStatusException invalid() {
+        return new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid cursor");
+    }
+}
@@ -0,0 +1,70 @@
+package fr.fullstack.shopapp.util;
+
+import fr.fullstack.shopapp.model.Category;
+import fr.fullstack.shopapp.model.Locale;
+import fr.fullstack.shopapp.model.Product;
+import fr.fullstack.shopapp.model.Shop;
+import org.springframework.util.DigestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Entity tags of the API responses, built from the version columns maintained by the database.
+ * <p>
+ * A resource tag is strong and can be rebuilt from a version lookup alone, without loading the
+ * entity. A page tag is weak: it digests the tags of its elements and the page bounds.
+ */
+public final class ETags {
+
+    private ETags() {
+    }
+
+    public static String of(Shop shop) {
+        return shop(shop.getId(), shop.getVersion());
+    }
+
+    public static String of(Category category) {
+        return category(category.getId(), category.getVersion());
+    }
+
+    public static String of(Product product) {
+        Shop shop = product.getShop();
+        long categoriesVersion = product.getCategories().stream().mapToLong(Category::getVersion).sum();
+        return product(product.getId(), product.getVersion() + "."
+                + (shop == null ? 0 : shop.getId()) + "."
+                + (shop == null ? 0 : shop.getVersion()) + "."
+                + categoriesVersion);
+    }
+
+    public static String shop(long id, long version) {
+        return "\"shop-" + id + "-" + version + "\"";
+    }
+
+    public static String category(long id, long version) {
+        return "\"category-" + id + "-" + version + "\"";
+    }
+
+    /**
+     * A product embeds its shop and its categories: {@code versionTag} is its own version, the id
+     * and version of its shop and the sum of the versions of its categories, dot separated.
+     */
+    public static String product(long id, String versionTag) {
+        return "\"product-" + id + "-" + versionTag + "\"";
+    }
+
+    /**
+     * A product in a single locale only embeds its own fields. The tag carries the asked locale,
+     * not the one served, so that it can be rebuilt from the product version alone.
+     */
+    public static String productView(long id, long version, Locale locale) {
+        return "\"product-" + id + "-" + locale + "-" + version + "\"";
+    }
+
+    public static <T> String ofPage(List<T> content, Function<T, String> tagOf, String bounds) {
+        StringBuilder tags = new StringBuilder(bounds);
+        content.forEach(element -> tags.append(',').append(tagOf.apply(element)));
+        return "W/\"" + DigestUtils.md5DigestAsHex(tags.toString().getBytes(StandardCharsets.UTF_8)) + "\"";
+    }
+}
@@ -0,0 +1,116 @@
+package fr.fullstack.shopapp.util;
+
+import fr.fullstack.shopapp.model.OpeningHoursShop;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.time.Clock;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Opening hours of a shop compiled into sorted, disjoint intervals of minutes of the week, from
+ * monday 00:00 (0) to sunday 23:59 (10079). Each interval opens at {@code openAt} included and
+ * closes at {@code closeAt} excluded; hours closing before they open end on the next day.
+ * <p>
+ * Schedules are compared by value, so that shops sharing the same hours share one instance.
+ */
+public final class WeeklySchedule {
+    public static final int MINUTES_PER_DAY = 24 * 60;
+
+    public static final int MINUTES_PER_WEEK = 7 * MINUTES_PER_DAY;
+
+    private final int[] ends;
+
+    private final int[] starts;
+
+    private WeeklySchedule(int[] starts, int[] ends) {
+        this.starts = starts;
+        this.ends = ends;
+    }
+
+    public static WeeklySchedule compile(List<OpeningHoursShop> openingHours) {
+        List<int[]> intervals = new ArrayList<>();
+        for (OpeningHoursShop hours : openingHours) {
+            int start = (int) (hours.getDay() - 1) * MINUTES_PER_DAY + minuteOfDay(hours.getOpenAt());
+            int duration = minuteOfDay(hours.getCloseAt()) - minuteOfDay(hours.getOpenAt());
+            int end = start + (duration > 0 ? duration : duration + MINUTES_PER_DAY);
+            if (end > MINUTES_PER_WEEK) {
+                // Sunday night to monday morning
+                intervals.add(new int[]{start, MINUTES_PER_WEEK});
+                intervals.add(new int[]{0, end - MINUTES_PER_WEEK});
+            } else {
+                intervals.add(new int[]{start, end});
+            }
+        }
+        intervals.sort(Comparator.comparingInt(interval -> interval[0]));
+
+        // Merge the adjacent and overlapping intervals
+        List<int[]> merged = new ArrayList<>();
+        for (int[] interval : intervals) {
+            int[] last = merged.isEmpty() ? null : merged.get(merged.size() - 1);
+            if (last != null && interval[0] <= last[1]) {
+                last[1] = Math.max(last[1], interval[1]);
+            } else {
+                merged.add(interval);
+            }
+        }
+        return new WeeklySchedule(
+                merged.stream().mapToInt(interval -> interval[0]).toArray(),
+                merged.stream().mapToInt(interval -> interval[1]).toArray()
+        );
+    }
+
+    /**
+     * Minute of the week of "now" or of a "D-HH:mm" value, D being the day from 1 (monday) to 7.
+     */
+    public static int parseMinuteOfWeek(String value, Clock clock) {
+        if ("now".equals(value)) {
+            LocalDateTime now = LocalDateTime.now(clock);
+            return (now.getDayOfWeek().getValue() - 1) * MINUTES_PER_DAY + minuteOfDay(now.toLocalTime());
+        }
+        try {
+            int separator = value.indexOf('-');
+            int day = Integer.parseInt(value.substring(0, separator));
+            if (day < 1 || day > 7) {
+                throw new IllegalArgumentException("Day out of range");
+            }
+            return (day - 1) * MINUTES_PER_DAY + minuteOfDay(LocalTime.parse(value.substring(separator + 1)));
+        } catch (RuntimeException e) {
+            throw new ResponseStatusException(
+                    HttpStatus.BAD_REQUEST, "openAt must be 'now' or a day and a time, e.g. '1-09:30'");
+        }
+    }
+
+    public boolean isEmpty() {
+        return starts.length == 0;
+    }
+
+    public boolean isOpenAt(int minuteOfWeek) {
+        int index = Arrays.binarySearch(starts, minuteOfWeek);
+        if (index >= 0) {
+            return true;
+        }
+        // Interval starting right before the minute, if any
+        int previous = -index - 2;
+        return previous >= 0 && minuteOfWeek < ends[previous];
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof WeeklySchedule other && Arrays.equals(starts, other.starts) && Arrays.equals(ends, other.ends);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * Arrays.hashCode(starts) + Arrays.hashCode(ends);
+    }
+
+    private static int minuteOfDay(LocalTime time) {
+        return time.toSecondOfDay() / 60;
+    }
+}
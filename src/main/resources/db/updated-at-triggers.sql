@@ -0,0 +1,109 @@
+-- Triggers de updated_at, installés au démarrage par l'application (SchemaMigrations) quand il en
+-- manque. Chaque instruction peut être rejouée.
+
+-- updated_at des boutiques, lu par la réindexation incrémentale : il change avec la boutique, ses
+-- produits (prix, catégories, libellés) et ses horaires, y compris hors de l'application (scripts,
+-- imports). Les triggers sur les tables liées sont par requête, une boutique n'est modifiée
+-- qu'une fois par import.
+create or replace function touch_shop() returns trigger as $$
+begin
+    new.updated_at := clock_timestamp();
+    return new;
+end;
+$$ language plpgsql;
+
+drop trigger if exists shops_touch on shops;
+create trigger shops_touch before insert or update on shops
+for each row execute function touch_shop();
+
+-- products, shops_opening_hours : colonne shop_id
+create or replace function touch_shops_of_rows() returns trigger as $$
+begin
+    if tg_op <> 'DELETE' then
+        update shops set updated_at = clock_timestamp() where id in (select shop_id from new_rows);
+    end if;
+    if tg_op <> 'INSERT' then
+        update shops set updated_at = clock_timestamp() where id in (select shop_id from old_rows);
+    end if;
+    return null;
+end;
+$$ language plpgsql;
+
+-- products_categories, products_localized_product : colonne product_id
+create or replace function touch_shops_of_product_links() returns trigger as $$
+begin
+    if tg_op <> 'DELETE' then
+        update shops set updated_at = clock_timestamp()
+        where id in (select p.shop_id from products p join new_rows r on r.product_id = p.id);
+    end if;
+    if tg_op <> 'INSERT' then
+        update shops set updated_at = clock_timestamp()
+        where id in (select p.shop_id from products p join old_rows r on r.product_id = p.id);
+    end if;
+    return null;
+end;
+$$ language plpgsql;
+
+-- localized_product, opening_hours : créés avant leur lien et supprimés après, seules les
+-- modifications sont suivies
+create or replace function touch_shops_of_localized_products() returns trigger as $$
+begin
+    update shops set updated_at = clock_timestamp()
+    where id in (select p.shop_id from products p
+                 join products_localized_product pl on pl.product_id = p.id
+                 join new_rows r on r.id = pl.localized_product_id);
+    return null;
+end;
+$$ language plpgsql;
+
+create or replace function touch_shops_of_opening_hours() returns trigger as $$
+begin
+    update shops set updated_at = clock_timestamp()
+    where id in (select so.shop_id from shops_opening_hours so join new_rows r on r.id = so.opening_hours_id);
+    return null;
+end;
+$$ language plpgsql;
+
+drop trigger if exists products_touch_shops_insert on products;
+create trigger products_touch_shops_insert after insert on products
+referencing new table as new_rows for each statement execute function touch_shops_of_rows();
+
+drop trigger if exists products_touch_shops_update on products;
+create trigger products_touch_shops_update after update on products
+referencing old table as old_rows new table as new_rows for each statement execute function touch_shops_of_rows();
+
+drop trigger if exists products_touch_shops_delete on products;
+create trigger products_touch_shops_delete after delete on products
+referencing old table as old_rows for each statement execute function touch_shops_of_rows();
+
+drop trigger if exists shops_opening_hours_touch_shops_insert on shops_opening_hours;
+create trigger shops_opening_hours_touch_shops_insert after insert on shops_opening_hours
+referencing new table as new_rows for each statement execute function touch_shops_of_rows();
+
+drop trigger if exists shops_opening_hours_touch_shops_delete on shops_opening_hours;
+create trigger shops_opening_hours_touch_shops_delete after delete on shops_opening_hours
+referencing old table as old_rows for each statement execute function touch_shops_of_rows();
+
+drop trigger if exists products_categories_touch_shops_insert on products_categories;
+create trigger products_categories_touch_shops_insert after insert on products_categories
+referencing new table as new_rows for each statement execute function touch_shops_of_product_links();
+
+drop trigger if exists products_categories_touch_shops_delete on products_categories;
+create trigger products_categories_touch_shops_delete after delete on products_categories
+referencing old table as old_rows for each statement execute function touch_shops_of_product_links();
+
+drop trigger if exists products_localized_product_touch_shops_insert on products_localized_product;
+create trigger products_localized_product_touch_shops_insert after insert on products_localized_product
+referencing new table as new_rows for each statement execute function touch_shops_of_product_links();
+
+drop trigger if exists products_localized_product_touch_shops_delete on products_localized_product;
+create trigger products_localized_product_touch_shops_delete after delete on products_localized_product
+referencing old table as old_rows for each statement execute function touch_shops_of_product_links();
+
+drop trigger if exists localized_product_touch_shops_update on localized_product;
+create trigger localized_product_touch_shops_update after update on localized_product
+referencing new table as new_rows for each statement execute function touch_shops_of_localized_products();
+
+drop trigger if exists opening_hours_touch_shops_update on opening_hours;
+create trigger opening_hours_touch_shops_update after update on opening_hours
+referencing new table as new_rows for each statement execute function touch_shops_of_opening_hours();
@@ -0,0 +1,57 @@
+package fr.fullstack.shopapp.config;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import static org.assertj.core.api.Assertions.assertThatCode;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class QueryCountGuardTest {
+
+    private final MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/v1/shops");
+
+    private final MockHttpServletResponse response = new MockHttpServletResponse();
+
+    @Test
+    void strictGuardRejectsTheStatementOverTheBudget() {
+        QueryCountGuard guard = new QueryCountGuard(2, true);
+        guard.preHandle(request, response, null);
+
+        guard.inspect("select 1");
+        guard.inspect("select 2");
+        assertThatThrownBy(() -> guard.inspect("select 3")).isInstanceOf(IllegalStateException.class);
+        guard.afterCompletion(request, response, null, null);
+    }
+
+    @Test
+    void lenientGuardOnlyLogs() {
+        QueryCountGuard guard = new QueryCountGuard(1, false);
+        guard.preHandle(request, response, null);
+
+        assertThatCode(() -> {
+            guard.inspect("select 1");
+            guard.inspect("select 2");
+        }).doesNotThrowAnyException();
+        guard.afterCompletion(request, response, null, null);
+    }
+
+    @Test
+    void statementsOutsideOfRequestsAreNotCounted() {
+        QueryCountGuard guard = new QueryCountGuard(0, true);
+
+        assertThatCode(() -> guard.inspect("select 1")).doesNotThrowAnyException();
+    }
+
+    @Test
+    void eachRequestHasItsOwnBudget() {
+        QueryCountGuard guard = new QueryCountGuard(1, true);
+        guard.preHandle(request, response, null);
+        guard.inspect("select 1");
+        guard.afterCompletion(request, response, null, null);
+
+        guard.preHandle(request, response, null);
+        assertThatCode(() -> guard.inspect("select 1")).doesNotThrowAnyException();
+        guard.afterCompletion(request, response, null, null);
+    }
+}
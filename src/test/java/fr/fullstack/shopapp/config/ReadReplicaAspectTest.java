@@ -0,0 +1,115 @@
+package fr.fullstack.shopapp.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import fr.fullstack.shopapp.repository.jpa.CategoryRepository;
+import fr.fullstack.shopapp.repository.jpa.ProductRepository;
+import fr.fullstack.shopapp.service.CategoryService;
+import fr.fullstack.shopapp.service.ProductService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.aop.aspectj.annotation.AspectJProxyFactory;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.util.List;
+import java.util.Optional;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class ReadReplicaAspectTest {
+
+    @Mock
+    private CategoryRepository categoryRepository;
+
+    @InjectMocks
+    private CategoryService categoryService;
+
+    @Mock
+    private Connection connection;
+
+    @Mock
+    private DataSource primary;
+
+    @Mock
+    private ProductRepository productRepository;
+
+    @InjectMocks
+    private ProductService productService;
+
+    @Mock
+    private HikariDataSource replica;
+
+    private ReadReplicaDataSource dataSource;
+
+    @BeforeEach
+    void setUp() {
+        when(replica.getPoolName()).thenReturn("replica-1");
+        dataSource = new ReadReplicaDataSource(
+                primary, List.of(replica), ReadReplicaDataSource.Selection.ROUND_ROBIN, new SimpleMeterRegistry());
+    }
+
+    @Test
+    void productListingsAreReadOnTheReplica() throws Exception {
+        when(replica.getConnection()).thenReturn(connection);
+        // The connection is taken by the first statement of the transaction
+        when(productRepository.findByOrderByIdAsc(any())).thenAnswer(invocation -> {
+            dataSource.getConnection();
+            return Page.empty();
+        });
+
+        proxy(productService).getShopProductList(Optional.empty(), Optional.empty(), PageRequest.of(0, 20));
+
+        verify(replica).getConnection();
+        verifyNoInteractions(primary);
+    }
+
+    @Test
+    void categoryListingsAreReadOnTheReplica() throws Exception {
+        when(replica.getConnection()).thenReturn(connection);
+        when(categoryRepository.findByOrderByIdAsc(any())).thenAnswer(invocation -> {
+            dataSource.getConnection();
+            return Page.empty();
+        });
+
+        proxy(categoryService).getCategoryList(PageRequest.of(0, 20));
+
+        verify(replica).getConnection();
+        verifyNoInteractions(primary);
+    }
+
+    @Test
+    void listingsInsideARequestRequiringThePrimaryStayOnIt() throws Exception {
+        when(primary.getConnection()).thenReturn(connection);
+        when(productRepository.findByOrderByIdAsc(any())).thenAnswer(invocation -> {
+            dataSource.getConnection();
+            return Page.empty();
+        });
+
+        Boolean previous = ReadReplicaDataSource.requirePrimary(true);
+        try {
+            proxy(productService).getShopProductList(Optional.empty(), Optional.empty(), PageRequest.of(0, 20));
+        } finally {
+            ReadReplicaDataSource.requirePrimary(previous);
+        }
+
+        verify(primary).getConnection();
+    }
+
+    private static <T> T proxy(T service) {
+        AspectJProxyFactory factory = new AspectJProxyFactory(service);
+        factory.setProxyTargetClass(true);
+        factory.addAspect(ReadReplicaAspect.class);
+        return factory.getProxy();
+    }
+}
@@ -0,0 +1,137 @@
+package fr.fullstack.shopapp.controller;
+
+import fr.fullstack.shopapp.config.CacheConfig;
+import fr.fullstack.shopapp.config.QueryCountGuard;
+import fr.fullstack.shopapp.config.QueryCountGuardConfig;
+import fr.fullstack.shopapp.config.WebSecurityConfig;
+import fr.fullstack.shopapp.model.Shop;
+import fr.fullstack.shopapp.repository.jpa.ShopRepository;
+import fr.fullstack.shopapp.service.CategoryService;
+import fr.fullstack.shopapp.service.EntityCacheInvalidator;
+import fr.fullstack.shopapp.service.IndexExisitngShops;
+import fr.fullstack.shopapp.service.ListingResponseCache;
+import fr.fullstack.shopapp.service.OpeningHoursIndex;
+import fr.fullstack.shopapp.service.ProductExportService;
+import fr.fullstack.shopapp.service.ProductService;
+import fr.fullstack.shopapp.service.ShopIndexOutboxService;
+import fr.fullstack.shopapp.service.ShopSearchService;
+import fr.fullstack.shopapp.service.ShopService;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.SpringBootConfiguration;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.autoconfigure.domain.EntityScan;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+import org.springframework.jdbc.datasource.init.ScriptUtils;
+import org.springframework.test.web.servlet.MockMvc;
+
+import javax.sql.DataSource;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.util.stream.Collectors;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * The listing endpoints, with their production settings (batch fetching, second-level cache...),
+ * must stay within the statement budget of {@code shop.query-guard.max-statements}: the guard is
+ * strict here, a request issuing more statements fails.
+ */
+@SpringBootTest(
+        classes = ListingQueryBudgetTest.Application.class,
+        properties = {
+                "shop.query-guard.strict=true",
+                "spring.datasource.driver-class-name=org.h2.Driver",
+                "spring.datasource.url=jdbc:h2:mem:query-budget;MODE=PostgreSQL;DATABASE_TO_LOWER=TRUE",
+                "spring.datasource.username=sa",
+                "spring.datasource.password=",
+                "spring.jpa.hibernate.ddl-auto=create",
+                "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+                "spring.jpa.show-sql=false",
+                "management.endpoint.health.validate-group-membership=false",
+                "spring.autoconfigure.exclude="
+                        + "org.springframework.boot.autoconfigure.elasticsearch.ElasticsearchClientAutoConfiguration,"
+                        + "org.springframework.boot.autoconfigure.elasticsearch.ElasticsearchRestClientAutoConfiguration,"
+                        + "org.springframework.boot.autoconfigure.data.elasticsearch.ElasticsearchDataAutoConfiguration,"
+                        + "org.springframework.boot.autoconfigure.data.elasticsearch.ElasticsearchRepositoriesAutoConfiguration"
+        }
+)
+@AutoConfigureMockMvc
+class ListingQueryBudgetTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @MockBean
+    private IndexExisitngShops indexExisitngShops;
+
+    @MockBean
+    private ProductExportService productExportService;
+
+    @MockBean
+    private ShopSearchService shopSearchService;
+
+    @BeforeAll
+    static void seed(@Autowired DataSource dataSource, @Autowired OpeningHoursIndex openingHoursIndex) throws Exception {
+        // The sequences are created by Hibernate, the statements on them are PostgreSQL only
+        String sql = Files.readAllLines(Path.of("sql", "fill_tables.sql"), StandardCharsets.UTF_8).stream()
+                .filter(line -> !line.startsWith("create sequence") && !line.startsWith("select setval"))
+                .collect(Collectors.joining("\n"));
+        try (Connection connection = dataSource.getConnection()) {
+            ScriptUtils.executeSqlScript(connection, new ByteArrayResource(sql.getBytes(StandardCharsets.UTF_8)));
+        }
+        openingHoursIndex.rebuild();
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+            "/api/v1/shops",
+            "/api/v1/shops?sortBy=name",
+            "/api/v1/shops?sortBy=nbProducts&inVacations=false&createdAfter=2000-01-01",
+            "/api/v1/shops?search=boutique",
+            "/api/v1/shops?openAt=3-10:00",
+            "/api/v1/shops/cursor",
+            "/api/v1/shops/cursor?sortBy=createdAt",
+            "/api/v1/products",
+            "/api/v1/products?shopId=1",
+            "/api/v1/products?shopId=1&categoryId=1",
+            "/api/v1/products/cursor",
+            "/api/v1/categories"
+    })
+    void listingStaysWithinTheStatementBudget(String url) throws Exception {
+        mockMvc.perform(get(url)).andExpect(status().isOk());
+    }
+
+    @SpringBootConfiguration
+    @EnableAutoConfiguration
+    @EntityScan(basePackageClasses = Shop.class)
+    @EnableJpaRepositories(basePackageClasses = ShopRepository.class)
+    @Import({
+            CacheConfig.class,
+            CategoryController.class,
+            CategoryService.class,
+            EntityCacheInvalidator.class,
+            ListingResponseCache.class,
+            OpeningHoursIndex.class,
+            ProductController.class,
+            ProductService.class,
+            QueryCountGuard.class,
+            QueryCountGuardConfig.class,
+            ShopController.class,
+            ShopIndexOutboxService.class,
+            ShopService.class,
+            WebSecurityConfig.class
+    })
+    static class Application {
+    }
+}
@@ -0,0 +1,142 @@
+package fr.fullstack.shopapp.service;
+
+import fr.fullstack.shopapp.model.OpeningHoursShop;
+import fr.fullstack.shopapp.model.Shop;
+import fr.fullstack.shopapp.repository.jpa.ShopRepository;
+import fr.fullstack.shopapp.util.WeeklySchedule;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Pageable;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.time.Clock;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class OpeningHoursIndexTest {
+
+    private static final int MONDAY_09_30 = WeeklySchedule.parseMinuteOfWeek("1-09:30", Clock.systemUTC());
+
+    private static final int MONDAY_10_30 = WeeklySchedule.parseMinuteOfWeek("1-10:30", Clock.systemUTC());
+
+    private final ShopRepository shopRepository = mock(ShopRepository.class);
+
+    private final OpeningHoursIndex index = new OpeningHoursIndex(
+            shopRepository, mock(PlatformTransactionManager.class), 100
+    );
+
+    @Test
+    void pagesMergeTheGroupsByAscendingId() {
+        for (long id = 1; id <= 50; id++) {
+            index.update(id % 2 == 1 ? shop(id, 9, 18) : shop(id, 10, 12));
+        }
+
+        assertThat(index.findOpenAt(MONDAY_10_30, 0, 10).ids()).containsExactly(1, 2, 3, 4, 5, 6, 7, 8, 9, 10);
+        assertThat(index.findOpenAt(MONDAY_10_30, 45, 10).ids()).containsExactly(46, 47, 48, 49, 50);
+        assertThat(index.findOpenAt(MONDAY_10_30, 45, 10).total()).isEqualTo(50);
+        assertThat(index.findOpenAt(MONDAY_10_30, 50, 10).ids()).isEmpty();
+        assertThat(index.findOpenAt(MONDAY_09_30, 5, 3).ids()).containsExactly(11, 13, 15);
+        assertThat(index.findOpenAt(MONDAY_09_30, 5, 3).total()).isEqualTo(25);
+    }
+
+    @Test
+    void writesMoveAndRemoveShops() {
+        index.update(shop(1, 9, 18));
+        index.update(shop(2, 9, 18));
+        index.update(shop(3, 10, 12));
+
+        Shop inVacations = shop(1, 9, 18);
+        inVacations.setInVacations(true);
+        index.update(inVacations);
+        index.update(shop(3, 9, 18));
+        index.removeAll(List.of(2L));
+
+        assertThat(index.findOpenAt(MONDAY_09_30, 0, 10).ids()).containsExactly(3);
+    }
+
+    @Test
+    void pagesMatchASortedSetAfterManyWrites() {
+        Random random = new Random(42);
+        TreeSet<Long> openAt0930 = new TreeSet<>();
+        TreeSet<Long> openAt1030 = new TreeSet<>();
+        for (int i = 0; i < 20_000; i++) {
+            long id = 1 + random.nextInt(5_000);
+            openAt0930.remove(id);
+            openAt1030.remove(id);
+            switch (random.nextInt(3)) {
+                case 0 -> {
+                    index.update(shop(id, 9, 18));
+                    openAt0930.add(id);
+                    openAt1030.add(id);
+                }
+                case 1 -> {
+                    index.update(shop(id, 10, 12));
+                    openAt1030.add(id);
+                }
+                default -> index.removeAll(List.of(id));
+            }
+        }
+
+        assertPagesMatch(MONDAY_09_30, openAt0930, random);
+        assertPagesMatch(MONDAY_10_30, openAt1030, random);
+    }
+
+    @Test
+    void rebuildReplaysTheWritesReceivedDuringTheScan() {
+        index.update(shop(7, 9, 18));
+        when(shopRepository.findIdsAfter(anyLong(), any(Pageable.class))).thenAnswer(invocation -> {
+            long after = invocation.getArgument(0);
+            if (after > 0) {
+                return List.of();
+            }
+            // Committed while the scan runs, after its shop was read
+            index.update(shop(8, 9, 18));
+            return List.of(1L, 2L);
+        });
+        when(shopRepository.findWithOpeningHoursByIdIn(any())).thenAnswer(invocation -> {
+            Collection<Long> ids = invocation.getArgument(0);
+            return ids.stream().map(id -> shop(id, 9, 18)).toList();
+        });
+
+        assertThat(index.isReady()).isFalse();
+        index.rebuild();
+
+        assertThat(index.isReady()).isTrue();
+        // Shop 7 was not found by the scan, shop 8 was written during it
+        assertThat(index.findOpenAt(MONDAY_09_30, 0, 10).ids()).containsExactly(1, 2, 8);
+    }
+
+    private void assertPagesMatch(int minuteOfWeek, TreeSet<Long> expected, Random random) {
+        List<Long> all = new ArrayList<>(expected);
+        for (int i = 0; i < 50; i++) {
+            int offset = random.nextInt(all.size() + 10);
+            int limit = 1 + random.nextInt(30);
+            OpeningHoursIndex.OpenShops page = index.findOpenAt(minuteOfWeek, offset, limit);
+
+            assertThat(page.total()).isEqualTo(all.size());
+            assertThat(page.ids()).containsExactly(all.subList(Math.min(offset, all.size()),
+                    Math.min(offset + limit, all.size())).stream().mapToLong(Long::longValue).toArray());
+        }
+    }
+
+    // Open on mondays between the two hours
+    private static Shop shop(long id, int openAt, int closeAt) {
+        OpeningHoursShop hours = new OpeningHoursShop();
+        hours.setDay(1);
+        hours.setOpenAt(LocalTime.of(openAt, 0));
+        hours.setCloseAt(LocalTime.of(closeAt, 0));
+        Shop shop = new Shop();
+        shop.setId(id);
+        shop.setOpeningHours(List.of(hours));
+        return shop;
+    }
+}
@@ -0,0 +1,129 @@
+package fr.fullstack.shopapp.service;
+
+import fr.fullstack.shopapp.dto.CursorPage;
+import fr.fullstack.shopapp.model.Shop;
+import fr.fullstack.shopapp.repository.jpa.ShopRepository;
+import fr.fullstack.shopapp.util.Cursor;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class ShopServiceCursorTest {
+
+    @Mock
+    private ShopRepository shopRepository;
+
+    @InjectMocks
+    private ShopService shopService;
+
+    @Test
+    void firstPageHasANextCursorWhenAnExtraRowIsFetched() {
+        when(shopRepository.findOrderedByNbProducts(PageRequest.of(0, 3)))
+                .thenReturn(List.of(shop(1, 30), shop(2, 20), shop(3, 10)));
+
+        CursorPage<Shop> page = shopService.getShopListAfter(Optional.of("nbProducts"), Optional.empty(), 2);
+
+        assertThat(page.getContent()).extracting(Shop::getId).containsExactly(1L, 2L);
+        Cursor next = Cursor.decode(page.getNext());
+        assertThat(next.getLongKey("nbProducts")).isEqualTo(20);
+        assertThat(next.getId()).isEqualTo(2);
+    }
+
+    @Test
+    void lastPageHasNoNextCursor() {
+        when(shopRepository.findOrderedByNbProductsAfter(20, 2, PageRequest.of(0, 3)))
+                .thenReturn(List.of(shop(3, 10)));
+
+        CursorPage<Shop> page = shopService.getShopListAfter(
+                Optional.of("nbProducts"), Optional.of(new Cursor("nbProducts", "20", 2)), 2);
+
+        assertThat(page.getContent()).extracting(Shop::getId).containsExactly(3L);
+        assertThat(page.getNext()).isNull();
+    }
+
+    @Test
+    void unknownSortsFallBackToNbProducts() {
+        when(shopRepository.findOrderedByNbProducts(any())).thenReturn(List.of());
+
+        CursorPage<Shop> page = shopService.getShopListAfter(Optional.of("price"), Optional.empty(), 2);
+
+        verify(shopRepository).findOrderedByNbProducts(PageRequest.of(0, 3));
+        assertThat(page.getContent()).isEmpty();
+        assertThat(page.getNext()).isNull();
+    }
+
+    @Test
+    void createdAtCursorsResumeAfterTheirDate() {
+        Shop shop = shop(5, 0);
+        ReflectionTestUtils.setField(shop, "createdAt", LocalDate.of(2024, 3, 1));
+        when(shopRepository.findOrderedByCreatedAtAfter(LocalDate.of(2024, 2, 1), 4, PageRequest.of(0, 2)))
+                .thenReturn(List.of(shop, shop(6, 0)));
+
+        CursorPage<Shop> page = shopService.getShopListAfter(
+                Optional.of("createdAt"), Optional.of(new Cursor("createdAt", "2024-02-01", 4)), 1);
+
+        assertThat(page.getContent()).extracting(Shop::getId).containsExactly(5L);
+        assertThat(Cursor.decode(page.getNext()).getDateKey("createdAt")).isEqualTo(LocalDate.of(2024, 3, 1));
+    }
+
+    @Test
+    void nameCursorsKeepTheirKey() {
+        when(shopRepository.findOrderedByNameAfter("Épicerie", 8, PageRequest.of(0, 11))).thenReturn(List.of());
+
+        assertThat(shopService.getShopListAfter(
+                Optional.of("name"), Optional.of(new Cursor("name", "Épicerie", 8)), 10).getContent()).isEmpty();
+    }
+
+    @Test
+    void idCursorsResumeAfterTheirId() {
+        when(shopRepository.findByIdGreaterThanOrderByIdAsc(9, PageRequest.of(0, 11))).thenReturn(List.of());
+
+        shopService.getShopListAfter(Optional.empty(), Optional.of(new Cursor("id", "", 9)), 10);
+    }
+
+    @Test
+    void cursorsWithAnUnparsableKeyAreBadRequests() {
+        assertBadRequest(Optional.of("nbProducts"), Cursor.decode(new Cursor("nbProducts", "abc", 5).encode()));
+        assertBadRequest(Optional.of("nbCategories"), new Cursor("nbCategories", "1.5", 5));
+        assertBadRequest(Optional.of("createdAt"), new Cursor("createdAt", "2024-13-01", 5));
+        verifyNoInteractions(shopRepository);
+    }
+
+    @Test
+    void cursorsOfAnotherSortAreBadRequests() {
+        assertBadRequest(Optional.of("name"), new Cursor("nbProducts", "20", 2));
+        assertBadRequest(Optional.empty(), new Cursor("name", "a", 2));
+        verifyNoInteractions(shopRepository);
+    }
+
+    private void assertBadRequest(Optional<String> sortBy, Cursor cursor) {
+        assertThatThrownBy(() -> shopService.getShopListAfter(sortBy, Optional.of(cursor), 10))
+                .isInstanceOfSatisfying(ResponseStatusException.class,
+                        e -> assertThat(e.getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST));
+    }
+
+    private static Shop shop(long id, long nbProducts) {
+        Shop shop = new Shop();
+        shop.setId(id);
+        shop.setNbProducts(nbProducts);
+        return shop;
+    }
+}
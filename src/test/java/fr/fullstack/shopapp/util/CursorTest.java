@@ -0,0 +1,67 @@
+package fr.fullstack.shopapp.util;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.Base64;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class CursorTest {
+
+    @Test
+    void decodesWhatItEncodes() {
+        Cursor cursor = Cursor.decode(new Cursor("name", "Boulangerie | Pâtisserie", 42).encode());
+
+        assertThat(cursor.getSort()).isEqualTo("name");
+        assertThat(cursor.getKey("name")).isEqualTo("Boulangerie | Pâtisserie");
+        assertThat(cursor.getId()).isEqualTo(42);
+    }
+
+    @Test
+    void encodesWithoutPadding() {
+        assertThat(new Cursor("id", "", 1).encode()).doesNotContain("=");
+    }
+
+    @Test
+    void parsesTypedKeys() {
+        assertThat(Cursor.decode(new Cursor("createdAt", "2024-02-29", 7).encode()).getDateKey("createdAt"))
+                .isEqualTo(LocalDate.of(2024, 2, 29));
+        assertThat(Cursor.decode(new Cursor("nbProducts", "120", 7).encode()).getLongKey("nbProducts"))
+                .isEqualTo(120);
+    }
+
+    @Test
+    void rejectsMalformedCursors() {
+        assertBadRequest(() -> Cursor.decode("not base64!"));
+        assertBadRequest(() -> Cursor.decode(raw("no separator")));
+        assertBadRequest(() -> Cursor.decode(raw("nbProducts|12|abc")));
+    }
+
+    @Test
+    void rejectsKeysThatDoNotParse() {
+        assertBadRequest(() -> Cursor.decode(raw("nbProducts|abc|5")).getLongKey("nbProducts"));
+        assertBadRequest(() -> Cursor.decode(raw("createdAt|yesterday|5")).getDateKey("createdAt"));
+    }
+
+    @Test
+    void rejectsCursorsOfAnotherSort() {
+        Cursor cursor = Cursor.decode(new Cursor("name", "a", 1).encode());
+
+        assertBadRequest(() -> cursor.getKey("nbProducts"));
+    }
+
+    private static String raw(String value) {
+        return Base64.getUrlEncoder().encodeToString(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void assertBadRequest(Runnable call) {
+        assertThatThrownBy(call::run)
+                .isInstanceOfSatisfying(ResponseStatusException.class,
+                        e -> assertThat(e.getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST));
+    }
+}